@@ -0,0 +1,106 @@
+package com.gudcoinwallet.android;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int threshold;
+    private final long minCooldown;
+    private final long maxCooldown;
+
+    private State state = State.CLOSED;
+    private int failures = 0;
+    private long cooldown;
+    private long openUntil = 0;
+    private boolean probing = false;
+
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong closed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public CircuitBreaker(int threshold, long minCooldown, long maxCooldown) {
+        this.threshold = threshold;
+        this.minCooldown = minCooldown;
+        this.maxCooldown = maxCooldown;
+        this.cooldown = minCooldown;
+    }
+
+    // an open circuit rejects everything until the cooldown expires, then lets a single probe through
+    public synchronized boolean allow() {
+        switch (state) {
+            case OPEN:
+                if (System.currentTimeMillis() < openUntil) break;
+                state = State.HALF_OPEN;
+                probing = true;
+                return true;
+            case HALF_OPEN:
+                if (probing) break;
+                probing = true;
+                return true;
+            default:
+                return true;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    public synchronized void record(boolean success) {
+        if (state == State.HALF_OPEN) {
+            probing = false;
+            if (success) {
+                close();
+            } else {
+                cooldown = Math.min(maxCooldown, cooldown * 2);
+                open();
+            }
+            return;
+        }
+        if (success) {
+            failures = 0;
+            return;
+        }
+        if (++failures >= threshold && state == State.CLOSED) open();
+    }
+
+    // releases a probe slot when the request never reached the node
+    public synchronized void cancel() {
+        if (state == State.HALF_OPEN) probing = false;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openUntil = System.currentTimeMillis() + cooldown;
+        opened.incrementAndGet();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        failures = 0;
+        cooldown = minCooldown;
+        closed.incrementAndGet();
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    public long opened() {
+        return opened.get();
+    }
+
+    public long closed() {
+        return closed.get();
+    }
+
+    public long rejected() {
+        return rejected.get();
+    }
+
+    @Override
+    public String toString() {
+        return "state=" + state() + " opened=" + opened() + " closed=" + closed() + " rejected=" + rejected();
+    }
+
+}
@@ -0,0 +1,136 @@
+package com.gudcoinwallet.android;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+
+// a server-sent events client that keeps reconnecting, resuming from the last event id,
+// until closed; listeners are called on the stream's own thread and should hand off any work
+public class EventSource implements Runnable {
+
+    public interface Listener {
+        void onEvent(String event, String data);
+        void onConnected(boolean connected);
+    }
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int CONNECT_TIMEOUT = 10*1000;
+    private static final int READ_TIMEOUT = 90*1000;
+    private static final long MIN_RETRY = 1000;
+    private static final long MAX_RETRY = 60*1000;
+
+    private final String url;
+    private final Listener listener;
+    private final Thread thread;
+    private volatile boolean closed = false;
+    private volatile boolean connected = false;
+    private HttpURLConnection connection = null;
+    private String lastEventId = null;
+    private long retry = MIN_RETRY;
+
+    // a dedicated thread, a stream is open for the life of the app and would pin a pool thread
+    public EventSource(String url, Listener listener) {
+        this.url = url;
+        this.listener = listener;
+        thread = new Thread(this, "EventSource");
+        thread.setDaemon(true);
+    }
+
+    public EventSource start() {
+        thread.start();
+        return this;
+    }
+
+    public boolean connected() {
+        return connected;
+    }
+
+    public void close() {
+        closed = true;
+        thread.interrupt();
+        synchronized (this) {
+            // blocking reads ignore interrupts, so tear the connection down
+            if (connection != null) connection.disconnect();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (!closed) {
+            try {
+                read();
+            } catch (IOException e) {
+                // dropped, callers poll until the stream is back
+            }
+            setConnected(false);
+            if (closed) break;
+            try {
+                Thread.sleep(retry);
+            } catch (InterruptedException e) {
+                break;
+            }
+            retry = Math.min(MAX_RETRY, retry * 2);
+        }
+    }
+
+    private void read() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        synchronized (this) {
+            if (closed) return;
+            this.connection = connection;
+        }
+        try {
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+            connection.setRequestProperty("Accept", "text/event-stream");
+            connection.setRequestProperty("Cache-Control", "no-cache");
+            if (lastEventId != null) connection.setRequestProperty("Last-Event-ID", lastEventId);
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) throw new IOException("Unexpected status " + connection.getResponseCode());
+            BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), UTF8));
+            setConnected(true);
+            retry = MIN_RETRY;
+            String event = null;
+            StringBuilder data = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    if (data != null) listener.onEvent(event == null ? "message" : event, data.toString());
+                    event = null;
+                    data = null;
+                    continue;
+                }
+                if (line.startsWith(":")) continue;
+                int colon = line.indexOf(':');
+                String field = colon == -1 ? line : line.substring(0, colon);
+                String value = colon == -1 ? "" : line.substring(line.startsWith(": ", colon) ? colon + 2 : colon + 1);
+                switch (field) {
+                    case "event": event = value; break;
+                    case "data": data = data == null ? new StringBuilder(value) : data.append('\n').append(value); break;
+                    case "id": lastEventId = value; break;
+                    case "retry":
+                        try {
+                            retry = Math.max(MIN_RETRY, Long.parseLong(value));
+                        } catch (NumberFormatException e) {
+                            // ignored as the spec says
+                        }
+                        break;
+                }
+            }
+        } finally {
+            synchronized (this) {
+                this.connection = null;
+            }
+            connection.disconnect();
+        }
+    }
+
+    private void setConnected(boolean connected) {
+        if (this.connected == connected) return;
+        this.connected = connected;
+        listener.onConnected(connected);
+    }
+
+}
@@ -9,6 +9,7 @@ import android.net.NetworkInfo;
 import android.preference.PreferenceManager;
 
 import com.gudcoinwallet.android.crypto.Coin;
+import com.gudcoinwallet.android.crypto.Coins;
 import com.raugfer.crypto.coins;
 import com.raugfer.crypto.dict;
 import com.raugfer.crypto.mnemonic;
@@ -16,9 +17,11 @@ import com.raugfer.crypto.pair;
 import com.gudcoinwallet.android.crypto.Sync;
 import com.gudcoinwallet.android.db.AppDatabase;
 
+import java.io.File;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
@@ -66,13 +69,23 @@ public final class MainApplication extends Application {
         drawable.put("WAVES", R.drawable.waves);
         drawable.put("UMTC", R.drawable.gudcoin);
 
+        Network.getCache().setDirectory(new File(getCacheDir(), "network"));
+        setPushUrl(false, getString(R.string.push_url));
+        setPushUrl(true, getString(R.string.push_url_testnet));
+
         exec = createExec();
         mainnetSync = new Sync(exec, mainnetdb.appDao(), false);
         testnetSync = new Sync(exec, testnetdb.appDao(), true);
     }
 
+    private void setPushUrl(boolean testnet, String url) {
+        for (Iterator<Coin> i = Coins.list(); i.hasNext(); ) {
+            Coins.setPushUrl(i.next().getCode(), testnet, url.isEmpty() ? null : url);
+        }
+    }
+
     private AppDatabase createDatabase(String name) {
-        return Room.databaseBuilder(getApplicationContext(), AppDatabase.class, name).allowMainThreadQueries().build();
+        return Room.databaseBuilder(getApplicationContext(), AppDatabase.class, name).addMigrations(AppDatabase.MIGRATION_1_2).allowMainThreadQueries().build();
     }
 
     private ExecutorService createExec() {
@@ -201,6 +214,9 @@ public final class MainApplication extends Application {
     }
 
     public void logout() {
+        // push channels block in reads that ignore interrupts
+        mainnetSync.unsubscribe();
+        testnetSync.unsubscribe();
         boolean done = false;
         do {
             exec.shutdownNow();
@@ -212,6 +228,7 @@ public final class MainApplication extends Application {
         } while (!done);
         mainnetdb.clearAllTables();
         testnetdb.clearAllTables();
+        Network.getCache().clear();
         SharedPreferences preferences = getPreferences();
         SharedPreferences.Editor editor = preferences.edit();
         editor.remove("encrypted_session");
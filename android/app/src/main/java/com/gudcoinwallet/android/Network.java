@@ -1,19 +1,147 @@
 package com.gudcoinwallet.android;
 
-import android.os.AsyncTask;
-import android.os.NetworkOnMainThreadException;
+import android.os.Handler;
+import android.os.Looper;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.Reader;
 import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
 
 public class Network {
 
+    private static final int MAX_CONNECTIONS_PER_HOST = 5;
+    private static final long KEEP_ALIVE = 5*60*1000;
+
+    static {
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", Integer.toString(MAX_CONNECTIONS_PER_HOST));
+        System.setProperty("http.keepAliveDuration", Long.toString(KEEP_ALIVE));
+    }
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // a single socket factory is required for the platform to reuse https connections
+    // and it also holds the session cache used for TLS session resumption
+    private static final SSLSocketFactory sslSocketFactory = createSocketFactory();
+
+    private static final ResponseCache cache = new ResponseCache(256*1024);
+
+    private static final NetworkMetrics metrics = new NetworkMetrics();
+
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int MAX_RATE_LIMIT_RETRIES = 3;
+    private static final long DEFAULT_RETRY_AFTER = 60*1000;
+
+    private static final long MIN_TIMEOUT = 1000;
+    private static final long MAX_TIMEOUT = 30*1000;
+    private static final long TIMEOUT_FACTOR = 2;
+
+    private static final RateLimiter limiter = new RateLimiter();
+
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private static final int MAX_CHILDREN = 32;
+
+    // threads for work a pool thread waits on, unqueued so that children never wait behind their parents
+    private static final ThreadPoolExecutor children = new ThreadPoolExecutor(0, MAX_CHILDREN, 60, TimeUnit.SECONDS, new SynchronousQueue<>());
+
+    private static final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    public static ResponseCache getCache() {
+        return cache;
+    }
+
+    public static NetworkMetrics getMetrics() {
+        return metrics;
+    }
+
+    private static SSLSocketFactory createSocketFactory() {
+        try {
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, null, null);
+            SSLSessionContext sessions = context.getClientSessionContext();
+            sessions.setSessionCacheSize(64);
+            sessions.setSessionTimeout((int) (4 * KEEP_ALIVE / 1000));
+            return context.getSocketFactory();
+        } catch (Exception e) {
+            return HttpsURLConnection.getDefaultSSLSocketFactory();
+        }
+    }
+
+    public static boolean isMainThread() {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+
+    private static CircuitBreaker breaker(String host) {
+        CircuitBreaker breaker = breakers.get(host);
+        if (breaker == null) {
+            breaker = new CircuitBreaker(5, 15*1000, 5*60*1000);
+            CircuitBreaker previous = breakers.putIfAbsent(host, breaker);
+            if (previous != null) breaker = previous;
+        }
+        return breaker;
+    }
+
+    public static CircuitBreaker getBreaker(String baseUrl) {
+        try {
+            return breaker(new URL(baseUrl).getHost());
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    public static Map<String, CircuitBreaker> getBreakers() {
+        return new TreeMap<>(breakers);
+    }
+
+    public static void setQuota(String baseUrl, RateLimiter.Quota... quotas) {
+        try {
+            limiter.configure(new URL(baseUrl).getHost(), quotas);
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
     public static String urlFetch(String url) throws IOException {
         return urlFetch(url, "GET", null);
     }
@@ -43,64 +171,501 @@ public class Network {
     }
 
     public static String urlFetch(String url, String method, String content, String contentType, int timeout) throws IOException {
+        return urlStream(url, method, content, contentType, timeout, TEXT);
+    }
+
+    public static <T> T urlStream(String url, Parser<T> parser) throws IOException {
+        return urlStream(url, "GET", null, "application/json", 5, parser);
+    }
+
+    public static <T> T urlStream(String url, String content, Parser<T> parser) throws IOException {
+        return urlStream(url, "POST", content, "application/json", 5, parser);
+    }
+
+    // for batch calls that the node counts against its quota once per item
+    public static <T> T urlStream(String url, int cost, Parser<T> parser) throws IOException {
+        return _urlFetch(url, "GET", null, "application/json", 5, cost, null, (HttpURLConnection connection, InputStream in) -> parser.parse(new InputStreamReader(in, UTF8)));
+    }
+
+    public static <T> T urlStream(String url, String method, String content, String contentType, int timeout, Parser<T> parser) throws IOException {
+        return _urlFetch(url, method, content, contentType, timeout, 1, null, (HttpURLConnection connection, InputStream in) -> parser.parse(new InputStreamReader(in, UTF8)));
+    }
+
+    public static String urlFetchCached(String url, int ttl) throws IOException {
+        return urlStreamCached(url, ttl, TEXT);
+    }
+
+    public static <T> T urlStreamCached(String url, int ttl, Parser<T> parser) throws IOException {
+        if (ttl <= 0) return urlStream(url, parser);
+        ResponseCache.Entry entry = cache.get(url);
+        if (entry != null && entry.fresh()) {
+            cache.hit();
+        } else {
+            entry = revalidate(url, ttl, entry);
+        }
+        return parser.parse(new InputStreamReader(new ByteArrayInputStream(entry.body), UTF8));
+    }
+
+    private static ResponseCache.Entry revalidate(String url, int ttl, ResponseCache.Entry entry) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        if (entry != null) {
+            if (entry.etag != null) headers.put("If-None-Match", entry.etag);
+            if (entry.lastModified != null) headers.put("If-Modified-Since", entry.lastModified);
+        }
+        ResponseCache.Entry revalidated = _urlFetch(url, "GET", null, null, 5, 1, headers, (HttpURLConnection connection, InputStream in) -> {
+            long expires = System.currentTimeMillis() + ttl*1000L;
+            if (entry != null && connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                cache.revalidated();
+                return new ResponseCache.Entry(entry.body, entry.etag, entry.lastModified, expires);
+            }
+            cache.missed();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int length;
+            while ((length = in.read(buffer)) != -1) out.write(buffer, 0, length);
+            return new ResponseCache.Entry(out.toByteArray(), connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"), expires);
+        });
+        cache.put(url, revalidated);
+        return revalidated;
+    }
+
+    public interface Parser<T> {
+        T parse(Reader reader) throws IOException;
+    }
+
+    private static final Parser<String> TEXT = (Reader reader) -> {
+        StringBuilder sb = new StringBuilder();
+        BufferedReader in = new BufferedReader(reader);
+        String line;
+        while ((line = in.readLine()) != null) sb.append(line).append('\n');
+        return sb.toString();
+    };
+
+    private interface Body<T> {
+        T read(HttpURLConnection connection, InputStream in) throws IOException;
+    }
+
+    public interface Fetch<T> {
+        T fetch() throws IOException;
+    }
+
+    public static <T> Call<T> urlStreamAsync(String url, String method, String content, String contentType, int timeout, long deadline, Parser<T> parser, Continuation<T> cont) {
+        return async(() -> urlStream(url, method, content, contentType, timeout, parser), deadline, cont);
+    }
+
+    public static Call<String> urlFetchAsync(String url, long deadline, Continuation<String> cont) {
+        return async(() -> urlFetch(url), deadline, cont);
+    }
+
+    public static Call<String> urlFetchAsync(String url, String content, long deadline, Continuation<String> cont) {
+        return async(() -> urlFetch(url, content), deadline, cont);
+    }
+
+    // runs blocking network work on the app executor and posts the result, null on failure, to the main thread
+    public static <T> Call<T> async(Fetch<T> fetch, long deadline, Continuation<T> cont) {
+        ExecutorService exec = MainApplication.app().getExec();
+        Call<T> call = new Call<>(fetch, deadline, cont, exec);
+        exec.execute(call);
+        return call;
+    }
+
+    // for work the calling background thread joins before it returns
+    public static <T> Call<T> fork(Fetch<T> fetch, long deadline) {
+        Call<T> call = call(fetch, deadline);
+        // once saturated the parent does the work itself rather than wait for a thread
+        if (!tryFork(call)) call.run();
+        return call;
+    }
+
+    // an unstarted call, for a caller that runs it itself and may cancel it from another thread
+    public static <T> Call<T> call(Fetch<T> fetch, long deadline) {
+        return new Call<>(fetch, deadline, null, children);
+    }
+
+    public static boolean tryFork(Call<?> call) {
         try {
-            return _urlFetch(url, method, content, contentType, timeout);
-        } catch (NetworkOnMainThreadException e) {
-            ExecutorService exec = MainApplication.app().getExec();
-            AsyncUrlFetch async = new AsyncUrlFetch();
-            String s;
+            children.execute(call);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    public static ScheduledFuture<?> schedule(Runnable task, long delay) {
+        return scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+
+    public static class Call<T> extends FutureTask<T> {
+        private static final ThreadLocal<Call<?>> current = new ThreadLocal<>();
+        private static final Handler main = new Handler(Looper.getMainLooper());
+
+        private final Fetch<T> fetch;
+        private final long deadline;
+        private final Continuation<T> cont;
+        private final Executor exec;
+        private HttpURLConnection connection = null;
+        private Thread runner = null;
+        private long retryAfter = 0;
+        private int retries = 0;
+
+        Call(Fetch<T> fetch, long deadline, Continuation<T> cont, Executor exec) {
+            super(fetch::fetch);
+            this.fetch = fetch;
+            this.deadline = deadline;
+            this.cont = cont;
+            this.exec = exec;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (isDone()) return;
+                runner = Thread.currentThread();
+            }
+            current.set(this);
+            long previous = setDeadline(deadline);
+            retryAfter = 0;
             try {
-                s = async.executeOnExecutor(exec, url, method, content, contentType, Integer.toString(timeout)).get();
-            } catch (InterruptedException|ExecutionException ue) {
-                throw new IOException(ue.getMessage());
+                T t = fetch.fetch();
+                if (!retry()) set(t);
+            } catch (Throwable e) {
+                if (!retry()) setException(e);
+            } finally {
+                setDeadline(previous);
+                current.remove();
+                synchronized (this) {
+                    runner = null;
+                }
+                if (isCancelled()) Thread.interrupted();
             }
-            if (async.exception != null) throw async.exception;
-            return s;
         }
-    }
 
-    private static class AsyncUrlFetch extends AsyncTask<String, Void, String> {
-        private IOException exception;
+        void limited(long wait) {
+            retryAfter = Math.max(retryAfter, wait);
+        }
+
+        // a rate limited attempt runs again once a permit is due, holding no thread meanwhile
+        private boolean retry() {
+            long wait = retryAfter;
+            if (wait <= 0 || retries >= MAX_RATE_LIMIT_RETRIES || isCancelled()) return false;
+            if (deadline != 0 && System.currentTimeMillis() + wait >= deadline) return false;
+            retries++;
+            scheduler.schedule(() -> {
+                if (isDone()) return;
+                try {
+                    exec.execute(this);
+                } catch (RejectedExecutionException e) {
+                    setException(e);
+                }
+            }, wait, TimeUnit.MILLISECONDS);
+            return true;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(false);
+            synchronized (this) {
+                if (cancelled && mayInterruptIfRunning && runner != null) runner.interrupt();
+                // blocking socket reads ignore interrupts, so tear the connection down
+                if (connection != null) connection.disconnect();
+            }
+            return cancelled;
+        }
 
         @Override
-        protected String doInBackground(String... objects) {
-            String url = objects[0];
-            String method = objects[1];
-            String content = objects[2];
-            String contentType = objects[3];
-            int timeout = Integer.parseInt(objects[4]);
+        protected void done() {
+            if (cont == null) return;
+            T t;
             try {
-                return _urlFetch(url, method, content, contentType, timeout);
-            } catch (IOException e) {
-                exception = e;
-                return null;
+                t = isCancelled() ? null : get();
+            } catch (InterruptedException|ExecutionException e) {
+                t = null;
             }
+            T result = t;
+            main.post(() -> cont.cont(result));
         }
-    };
 
-    private static String _urlFetch(String url, String method, String content, String contentType, int timeout) throws IOException {
+        private synchronized void attach(HttpURLConnection connection) throws IOException {
+            if (isCancelled()) throw new InterruptedIOException("Call cancelled");
+            this.connection = connection;
+        }
+
+        private synchronized void detach() {
+            connection = null;
+        }
+    }
+
+    private static final ThreadLocal<Long> deadline = new ThreadLocal<>();
+
+    // bounds every request made by the current thread, returns the previous deadline for nesting
+    public static long setDeadline(long deadline) {
+        Long previous = Network.deadline.get();
+        if (deadline == 0) Network.deadline.remove(); else Network.deadline.set(deadline);
+        return previous == null ? 0 : previous;
+    }
+
+    public static long getDeadline() {
+        Long deadline = Network.deadline.get();
+        return deadline == null ? 0 : deadline;
+    }
+
+    private static long remaining() throws IOException {
+        Long deadline = Network.deadline.get();
+        if (deadline == null) return Long.MAX_VALUE;
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) throw new SocketTimeoutException("Deadline exceeded");
+        return remaining;
+    }
+
+    // once an endpoint has enough samples its timeouts follow the observed latency
+    private static int[] timeouts(NetworkMetrics.Endpoint endpoint, int timeout) throws IOException {
+        long connectTimeout = timeout*1000L;
+        long readTimeout = timeout*1000L;
+        long latency = endpoint.recentPercentile(0.99);
+        if (latency != -1) {
+            long adaptive = Math.max(MIN_TIMEOUT, Math.min(MAX_TIMEOUT, latency * TIMEOUT_FACTOR));
+            connectTimeout = Math.min(connectTimeout, adaptive);
+            readTimeout = adaptive;
+        }
+        long remaining = remaining();
+        return new int[]{ (int) Math.min(connectTimeout, remaining), (int) Math.min(readTimeout, remaining) };
+    }
+
+    private static <T> T _urlFetch(String url, String method, String content, String contentType, int timeout, int cost, Map<String, String> headers, Body<T> body) throws IOException {
         if (MainApplication.app().shuttingDown()) throw new IOException("App shutting down");
-        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
-        connection.setDoInput(true);
-        connection.setConnectTimeout(timeout*1000);
-        connection.setReadTimeout(timeout*1000);
-        connection.setRequestMethod(method);
-        if (content != null) {
-            connection.setDoOutput(true);
-            connection.setRequestProperty("Content-Type", contentType);
-            OutputStream out = connection.getOutputStream();
-            out.write(content.getBytes());
-            out.close();
+        if (isMainThread()) throw new IOException("Network access from the main thread, use the async API");
+        Call<?> call = Call.current.get();
+        URL u = new URL(url);
+        NetworkMetrics.Endpoint endpoint = metrics.get(NetworkMetrics.endpoint(u));
+        int[] timeouts = timeouts(endpoint, timeout);
+        String host = u.getHost();
+        // never waits on the thread, an async call is rescheduled and a direct caller fails fast
+        long wait = limiter.acquire(host, cost);
+        if (wait > 0) {
+            if (call != null) call.limited(wait);
+            throw new RateLimitException(wait);
         }
-        StringBuilder sb = new StringBuilder();
-        BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()));
+        CircuitBreaker breaker = breaker(host);
+        if (!breaker.allow()) throw new CircuitOpenException(host);
+        long start = System.nanoTime();
+        HttpURLConnection connection;
+        try {
+            connection = (HttpURLConnection) u.openConnection();
+        } catch (IOException|RuntimeException e) {
+            breaker.cancel();
+            throw e;
+        }
+        byte[] payload = content == null ? null : content.getBytes();
+        CountingInputStream wire = null;
+        CountingInputStream decoded = null;
+        int status = -1;
+        boolean connected = false;
+        boolean timedOut = false;
+        boolean reusable = false;
         try {
-            String line;
-            while ((line = in.readLine()) != null) sb.append(line).append('\n');
+            if (connection instanceof HttpsURLConnection) {
+                ((HttpsURLConnection) connection).setSSLSocketFactory(sslSocketFactory);
+            }
+            if (call != null) call.attach(connection);
+            connection.setDoInput(true);
+            connection.setConnectTimeout(timeouts[0]);
+            connection.setReadTimeout(timeouts[1]);
+            connection.setRequestMethod(method);
+            // an explicit header disables transparent gzip so that compressed sizes can be measured
+            connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+            if (headers != null) {
+                for (Map.Entry<String, String> header : headers.entrySet()) {
+                    connection.setRequestProperty(header.getKey(), header.getValue());
+                }
+            }
+            if (payload != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", contentType);
+            }
+            long connecting = System.nanoTime();
+            connection.connect();
+            endpoint.connected((System.nanoTime() - connecting) / 1000);
+            connected = true;
+            if (payload != null) {
+                OutputStream out = connection.getOutputStream();
+                out.write(payload);
+                out.close();
+            }
+            InputStream in;
+            try {
+                in = connection.getInputStream();
+            } catch (IOException e) {
+                InputStream error = connection.getErrorStream();
+                reusable = drain(error);
+                if (error != null) error.close();
+                status = responseCode(connection);
+                if (status == HTTP_TOO_MANY_REQUESTS) {
+                    long delay = retryAfter(connection.getHeaderField("Retry-After"));
+                    limiter.backoff(host, delay);
+                    if (call != null) call.limited(delay);
+                    throw new RateLimitException(delay);
+                }
+                throw e;
+            }
+            InputStream decoder = null;
+            try {
+                wire = new CountingInputStream(in);
+                status = connection.getResponseCode();
+                boolean empty = status == HttpURLConnection.HTTP_NOT_MODIFIED || status == HttpURLConnection.HTTP_NO_CONTENT;
+                decoder = empty ? wire : decode(connection.getContentEncoding(), wire);
+                decoded = new CountingInputStream(decoder);
+                T t = body.read(connection, decoded);
+                reusable = drain(decoded) && drain(wire);
+                return t;
+            } finally {
+                // releases the native zlib state along with the socket stream
+                if (decoder != null) decoder.close();
+                in.close();
+            }
+        } catch (SocketTimeoutException e) {
+            timedOut = true;
+            throw e;
         } finally {
-            in.close();
+            // the socket only goes back to the keep-alive pool once the body is consumed and closed
+            if (call != null) call.detach();
+            if (!reusable) connection.disconnect();
+            // a losing hedge torn down by its caller says nothing about the node
+            if (call != null && call.isCancelled()) {
+                breaker.cancel();
+            } else {
+                // client errors still prove the node is up, only silence and 5xx count against it
+                breaker.record(status != -1 && status < 500);
+                long latency = (System.nanoTime() - start) / 1000000;
+                long bytesOut = payload == null ? 0 : payload.length;
+                long bytesIn = wire == null ? 0 : wire.count;
+                long bodyIn = decoded == null ? 0 : decoded.count;
+                endpoint.record(latency, status, timedOut, bytesOut, bytesIn, bodyIn);
+                // connect failures are left out so that dead nodes keep failing fast
+                if (reusable || (timedOut && connected)) endpoint.sample(latency);
+            }
+        }
+    }
+
+    private static int responseCode(HttpURLConnection connection) {
+        try {
+            return connection.getResponseCode();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static long retryAfter(String value) {
+        if (value != null) {
+            value = value.trim();
+            try {
+                return Math.max(0, Long.parseLong(value) * 1000);
+            } catch (NumberFormatException e) {
+            }
+            SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            try {
+                return Math.max(0, dateFormat.parse(value).getTime() - System.currentTimeMillis());
+            } catch (ParseException e) {
+            }
+        }
+        return DEFAULT_RETRY_AFTER;
+    }
+
+    public static class CircuitOpenException extends IOException {
+        CircuitOpenException(String host) {
+            super("Circuit open for " + host);
+        }
+    }
+
+    public static class RateLimitException extends IOException {
+        private final long retryAfter;
+
+        RateLimitException(long retryAfter) {
+            super("Rate limited, retry in " + retryAfter + "ms");
+            this.retryAfter = retryAfter;
+        }
+
+        public long getRetryAfter() {
+            return retryAfter;
+        }
+    }
+
+    private static InputStream decode(String encoding, InputStream in) throws IOException {
+        if (encoding == null) return in;
+        switch (encoding.trim().toLowerCase(Locale.US)) {
+            case "gzip":
+                return new GZIPInputStream(in);
+            case "deflate":
+                // servers disagree on whether deflate means zlib wrapped or raw
+                BufferedInputStream buffered = new BufferedInputStream(in);
+                buffered.mark(2);
+                int b0 = buffered.read();
+                int b1 = buffered.read();
+                buffered.reset();
+                boolean zlib = b0 != -1 && b1 != -1 && (b0 & 0x0f) == 8 && ((b0 << 8) | b1) % 31 == 0;
+                Inflater inflater = new Inflater(!zlib);
+                // an inflater passed in is not ended by close
+                return new InflaterInputStream(buffered, inflater) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            inflater.end();
+                        }
+                    }
+                };
+            default:
+                return in;
+        }
+    }
+
+    private static boolean drain(InputStream in) {
+        if (in == null) return false;
+        byte[] buffer = new byte[4096];
+        try {
+            while (in.read(buffer) != -1);
+        } catch (IOException e) {
+            return false;
+        }
+        return true;
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
         }
-        return sb.toString();
     }
 
 }
@@ -0,0 +1,222 @@
+package com.gudcoinwallet.android;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class NetworkMetrics {
+
+    // collapses identifiers (numbers, addresses, hashes) so that metrics are kept per path template
+    public static String endpoint(URL url) {
+        StringBuilder sb = new StringBuilder(url.getHost());
+        for (String segment : url.getPath().split("/")) {
+            if (segment.isEmpty()) continue;
+            sb.append('/');
+            sb.append(segment.matches("[0-9]+") || segment.length() >= 20 ? "*" : segment);
+        }
+        return sb.toString();
+    }
+
+    private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    public Endpoint get(String endpoint) {
+        Endpoint e = endpoints.get(endpoint);
+        if (e == null) {
+            e = new Endpoint();
+            Endpoint previous = endpoints.putIfAbsent(endpoint, e);
+            if (previous != null) e = previous;
+        }
+        return e;
+    }
+
+    public Map<String, Endpoint> snapshot() {
+        return new TreeMap<>(endpoints);
+    }
+
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Endpoint> entry : snapshot().entrySet()) {
+            sb.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    // latency bucket upper bounds in milliseconds, the last bucket is unbounded
+    private static final long[] BOUNDS = {
+        1, 2, 3, 5, 7, 10, 15, 20, 30, 50, 70, 100, 150, 200, 300, 500, 700,
+        1000, 1500, 2000, 3000, 5000, 7000, 10000, 15000, 20000, 30000, 60000,
+    };
+
+    private static final int REQUESTS = 0;
+    private static final int ERRORS = 1;
+    private static final int TIMEOUTS = 2;
+    private static final int BYTES_OUT = 3;
+    private static final int WIRE_BYTES = 4;
+    private static final int BODY_BYTES = 5;
+    private static final int CONNECTS = 6;
+    private static final int REUSED = 7;
+    private static final int CONNECT_MICROS = 8;
+    private static final int LATENCY = 9;
+    private static final int COUNTERS = LATENCY + BOUNDS.length + 1;
+
+    // a fresh socket needs at least a round trip, a pooled keep-alive one connects without the network
+    private static final long REUSED_MICROS = 1000;
+
+    private static final int RECENT = 64;
+    private static final int MIN_RECENT = 8;
+
+    public static final class Endpoint {
+        private final Striped counters = new Striped(COUNTERS);
+        private final ConcurrentMap<Integer, AtomicLong> statuses = new ConcurrentHashMap<>();
+        private final AtomicLongArray recent = new AtomicLongArray(RECENT);
+        private final AtomicLong samples = new AtomicLong();
+
+        void record(long latency, int status, boolean timeout, long bytesOut, long wire, long body) {
+            counters.add(REQUESTS, 1);
+            if (status < 200 || status >= 400) counters.add(ERRORS, 1);
+            if (timeout) counters.add(TIMEOUTS, 1);
+            counters.add(BYTES_OUT, bytesOut);
+            counters.add(WIRE_BYTES, wire);
+            counters.add(BODY_BYTES, body);
+            int bucket = 0;
+            while (bucket < BOUNDS.length && latency > BOUNDS[bucket]) bucket++;
+            counters.add(LATENCY + bucket, 1);
+            if (status != -1) {
+                AtomicLong count = statuses.get(status);
+                if (count == null) {
+                    count = new AtomicLong();
+                    AtomicLong previous = statuses.putIfAbsent(status, count);
+                    if (previous != null) count = previous;
+                }
+                count.incrementAndGet();
+            }
+        }
+
+        void connected(long micros) {
+            counters.add(CONNECTS, 1);
+            counters.add(CONNECT_MICROS, micros);
+            if (micros < REUSED_MICROS) counters.add(REUSED, 1);
+        }
+
+        // rolling window of the latest latencies, used to size timeouts
+        void sample(long latency) {
+            long index = samples.getAndIncrement();
+            recent.set((int) (index % RECENT), latency);
+        }
+
+        // exact quantile in milliseconds over the rolling window, -1 until enough samples
+        public long recentPercentile(double quantile) {
+            int count = (int) Math.min(samples.get(), RECENT);
+            if (count < MIN_RECENT) return -1;
+            long[] values = new long[count];
+            for (int i = 0; i < count; i++) values[i] = recent.get(i);
+            Arrays.sort(values);
+            int rank = (int) Math.ceil(quantile * count) - 1;
+            return values[Math.max(0, Math.min(count - 1, rank))];
+        }
+
+        public long requests() {
+            return counters.sum(REQUESTS);
+        }
+
+        public long errors() {
+            return counters.sum(ERRORS);
+        }
+
+        public long timeouts() {
+            return counters.sum(TIMEOUTS);
+        }
+
+        public long bytesOut() {
+            return counters.sum(BYTES_OUT);
+        }
+
+        public long wireBytes() {
+            return counters.sum(WIRE_BYTES);
+        }
+
+        public long bodyBytes() {
+            return counters.sum(BODY_BYTES);
+        }
+
+        public long connects() {
+            return counters.sum(CONNECTS);
+        }
+
+        public long reused() {
+            return counters.sum(REUSED);
+        }
+
+        // average connect time in microseconds, -1 without connects
+        public long connectMicros() {
+            long connects = connects();
+            return connects == 0 ? -1 : counters.sum(CONNECT_MICROS) / connects;
+        }
+
+        public Map<Integer, Long> statuses() {
+            Map<Integer, Long> map = new TreeMap<>();
+            for (Map.Entry<Integer, AtomicLong> entry : statuses.entrySet()) {
+                map.put(entry.getKey(), entry.getValue().get());
+            }
+            return map;
+        }
+
+        // upper bound in milliseconds of the bucket holding the given quantile, -1 if empty
+        public long percentile(double quantile) {
+            long[] histogram = new long[BOUNDS.length + 1];
+            long total = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] = counters.sum(LATENCY + i);
+                total += histogram[i];
+            }
+            if (total == 0) return -1;
+            long rank = (long) Math.ceil(quantile * total);
+            long cumulative = 0;
+            for (int i = 0; i < BOUNDS.length; i++) {
+                cumulative += histogram[i];
+                if (cumulative >= rank) return BOUNDS[i];
+            }
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public String toString() {
+            return "requests=" + requests() + " errors=" + errors() + " timeouts=" + timeouts()
+                    + " p50=" + percentile(0.50) + "ms p95=" + percentile(0.95) + "ms p99=" + percentile(0.99) + "ms"
+                    + " connects=" + connects() + " reused=" + reused() + " (" + connectMicros() + "us)"
+                    + " out=" + bytesOut() + " wire=" + wireBytes() + " body=" + bodyBytes()
+                    + " statuses=" + statuses();
+        }
+    }
+
+    // counters striped per thread so that concurrent requests do not contend
+    private static final class Striped {
+        private static final int STRIPES = 8;
+        private static final int PADDING = 8;
+
+        private final int stride;
+        private final AtomicLongArray cells;
+
+        Striped(int counters) {
+            stride = (counters + PADDING - 1) / PADDING * PADDING;
+            cells = new AtomicLongArray(STRIPES * stride);
+        }
+
+        void add(int counter, long delta) {
+            int stripe = (int) (Thread.currentThread().getId() % STRIPES);
+            cells.addAndGet(stripe * stride + counter, delta);
+        }
+
+        long sum(int counter) {
+            long sum = 0;
+            for (int stripe = 0; stripe < STRIPES; stripe++) sum += cells.get(stripe * stride + counter);
+            return sum;
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.gudcoinwallet.android;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+public class RateLimiter {
+
+    public static final class Quota {
+        final int permits;
+        final long period;
+        public Quota(int permits, long period) {
+            this.permits = permits;
+            this.period = period;
+        }
+    }
+
+    private final ConcurrentMap<String, Host> hosts = new ConcurrentHashMap<>();
+
+    // replaces the quotas of a host that already made requests
+    public void configure(String host, Quota... quotas) {
+        host(host).configure(quotas);
+    }
+
+    private Host host(String host) {
+        Host h = hosts.get(host);
+        if (h == null) {
+            h = new Host(new Quota[0]);
+            Host previous = hosts.putIfAbsent(host, h);
+            if (previous != null) h = previous;
+        }
+        return h;
+    }
+
+    public long acquire(String host) {
+        return acquire(host, 1);
+    }
+
+    // returns 0 when the permits were taken, otherwise how many milliseconds until they are available
+    public long acquire(String host, int cost) {
+        return host(host).acquire(System.currentTimeMillis(), cost);
+    }
+
+    public void backoff(String host, long delay) {
+        host(host).backoff(System.currentTimeMillis() + delay);
+    }
+
+    private static final class Host {
+        private Bucket[] buckets;
+        private long blockedUntil = 0;
+
+        Host(Quota[] quotas) {
+            configure(quotas);
+        }
+
+        synchronized void configure(Quota[] quotas) {
+            buckets = new Bucket[quotas.length];
+            for (int i = 0; i < quotas.length; i++) buckets[i] = new Bucket(quotas[i]);
+        }
+
+        synchronized long acquire(long now, int cost) {
+            if (blockedUntil > now) return blockedUntil - now;
+            long wait = 0;
+            for (Bucket bucket : buckets) wait = Math.max(wait, bucket.refill(now, cost));
+            if (wait > 0) return wait;
+            for (Bucket bucket : buckets) bucket.tokens -= Math.min(cost, bucket.capacity);
+            return 0;
+        }
+
+        synchronized void backoff(long until) {
+            if (until > blockedUntil) blockedUntil = until;
+            for (Bucket bucket : buckets) bucket.tokens = Math.min(bucket.tokens, 0);
+        }
+    }
+
+    private static final class Bucket {
+        private final int capacity;
+        private final double rate;
+        private double tokens;
+        private long last;
+
+        Bucket(Quota quota) {
+            capacity = quota.permits;
+            rate = (double) quota.permits / quota.period;
+            tokens = capacity;
+            last = System.currentTimeMillis();
+        }
+
+        // a cost above the capacity waits for a full bucket instead of forever
+        long refill(long now, int cost) {
+            tokens = Math.min(capacity, tokens + (now - last) * rate);
+            last = now;
+            double needed = Math.min(cost, capacity);
+            if (tokens >= needed) return 0;
+            return (long) Math.ceil((needed - tokens) / rate);
+        }
+    }
+
+}
@@ -0,0 +1,215 @@
+package com.gudcoinwallet.android;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ResponseCache {
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+    private File dir = null;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ResponseCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public synchronized void setDirectory(File dir) {
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) dir = null;
+        this.dir = dir;
+    }
+
+    private synchronized File dir() {
+        return dir;
+    }
+
+    // file io happens outside the lock so that memory hits never wait on the disk
+    public Entry get(String url) {
+        synchronized (this) {
+            Entry entry = entries.get(url);
+            if (entry != null) return entry;
+        }
+        File dir = dir();
+        if (dir == null) return null;
+        Entry entry = load(file(dir, url), url);
+        if (entry == null) return null;
+        synchronized (this) {
+            Entry current = entries.get(url);
+            if (current != null) return current;
+            insert(url, entry);
+        }
+        return entry;
+    }
+
+    public void put(String url, Entry entry) {
+        synchronized (this) {
+            Entry previous = entries.remove(url);
+            if (previous != null) bytes -= previous.body.length;
+            insert(url, entry);
+        }
+        File dir = dir();
+        if (dir == null) return;
+        if (entry.body.length > maxBytes) {
+            file(dir, url).delete();
+            return;
+        }
+        store(dir, file(dir, url), url, entry);
+        trim(dir);
+    }
+
+    public void remove(String url) {
+        synchronized (this) {
+            Entry previous = entries.remove(url);
+            if (previous != null) bytes -= previous.body.length;
+        }
+        File dir = dir();
+        if (dir != null) file(dir, url).delete();
+    }
+
+    public void clear() {
+        synchronized (this) {
+            entries.clear();
+            bytes = 0;
+        }
+        File dir = dir();
+        if (dir == null) return;
+        File[] files = dir.listFiles();
+        if (files != null) for (File file : files) file.delete();
+    }
+
+    private void insert(String url, Entry entry) {
+        if (entry.body.length > maxBytes) return;
+        entries.put(url, entry);
+        bytes += entry.body.length;
+        for (Iterator<Map.Entry<String, Entry>> i = entries.entrySet().iterator(); bytes > maxBytes && i.hasNext(); ) {
+            Entry eldest = i.next().getValue();
+            bytes -= eldest.body.length;
+            i.remove();
+        }
+    }
+
+    // the disk tier is held to the same limit, dropping the least recently written files
+    private void trim(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        long total = 0;
+        for (File file : files) total += file.length();
+        if (total <= maxBytes) return;
+        Arrays.sort(files, (File a, File b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (int i = 0; i < files.length && total > maxBytes; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) total -= length;
+        }
+    }
+
+    private static File file(File dir, String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes(UTF8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) sb.append(String.format("%02x", b & 0xff));
+            return new File(dir, sb.toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Entry load(File file, String url) {
+        if (!file.exists()) return null;
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                if (!in.readUTF().equals(url)) return null;
+                String etag = in.readUTF();
+                String lastModified = in.readUTF();
+                long expires = in.readLong();
+                byte[] body = new byte[in.readInt()];
+                in.readFully(body);
+                return new Entry(body, etag.isEmpty() ? null : etag, lastModified.isEmpty() ? null : lastModified, expires);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            file.delete();
+            return null;
+        }
+    }
+
+    // written aside and renamed so that a concurrent load never sees half a file
+    private static void store(File dir, File file, String url, Entry entry) {
+        File temp = new File(dir, file.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new FileOutputStream(temp));
+            try {
+                out.writeUTF(url);
+                out.writeUTF(entry.etag == null ? "" : entry.etag);
+                out.writeUTF(entry.lastModified == null ? "" : entry.lastModified);
+                out.writeLong(entry.expires);
+                out.writeInt(entry.body.length);
+                out.write(entry.body);
+            } finally {
+                out.close();
+            }
+            if (!temp.renameTo(file)) temp.delete();
+        } catch (IOException e) {
+            temp.delete();
+        }
+    }
+
+    void hit() {
+        hits.incrementAndGet();
+    }
+
+    void revalidated() {
+        revalidations.incrementAndGet();
+    }
+
+    void missed() {
+        misses.incrementAndGet();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long revalidations() {
+        return revalidations.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public static final class Entry {
+        final byte[] body;
+        final String etag;
+        final String lastModified;
+        final long expires;
+        Entry(byte[] body, String etag, String lastModified, long expires) {
+            this.body = body;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.expires = expires;
+        }
+        boolean fresh() {
+            return expires > System.currentTimeMillis();
+        }
+    }
+
+}
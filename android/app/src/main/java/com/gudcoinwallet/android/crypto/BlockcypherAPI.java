@@ -1,66 +1,86 @@
 package com.gudcoinwallet.android.crypto;
 
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.gudcoinwallet.android.Lambda;
 import com.gudcoinwallet.android.Network;
+import com.gudcoinwallet.android.RateLimiter;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.Reader;
 import java.math.BigInteger;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.Future;
 
 public class BlockcypherAPI implements Service {
 
     private final String baseUrl;
     private final int confirmations;
+    private final int ttl;
+
+    // batch calls count against the quota per address, the free tier caps them at 3
+    private static final int BATCH = 3;
 
     public BlockcypherAPI(String baseUrl) {
         this(baseUrl, 0);
     }
 
     public BlockcypherAPI(String baseUrl, int confirmations) {
-        this.baseUrl = baseUrl;
-        this.confirmations = confirmations;
+        this(baseUrl, confirmations, 0);
     }
 
-    private String urlFetch(String url) throws IOException {
-        return urlFetch(url, null);
+    public BlockcypherAPI(String baseUrl, int confirmations, int blockTime) {
+        this.baseUrl = baseUrl;
+        this.confirmations = confirmations;
+        this.ttl = blockTime / 4;
+        // free tier quota as published by blockcypher
+        Network.setQuota(baseUrl, new RateLimiter.Quota(3, 1000), new RateLimiter.Quota(200, 60*60*1000));
     }
 
-    private String urlFetch(String url, String content) throws IOException {
-        try {
-            return content == null ? Network.urlFetch(url) : Network.urlFetch(url, content);
-        } catch (FileNotFoundException e) {
-        }
+    @Override
+    public long getHeight() {
         try {
-            Thread.sleep(60000);
-        } catch (InterruptedException e) {
-            throw new IOException(e.getMessage());
+            String url = baseUrl;
+            JSONObject data = new JSONObject(Network.urlFetchCached(url, ttl));
+            return data.getLong("height");
+        } catch (Exception e) {
+            return -1;
         }
-        return Network.urlFetch(url, content);
     }
 
     @Override
-    public long getHeight() {
+    public long probe() {
         try {
-            String url = baseUrl;
-            JSONObject data = new JSONObject(urlFetch(url));
+            JSONObject data = new JSONObject(Network.urlFetch(baseUrl));
             return data.getLong("height");
         } catch (Exception e) {
             return -1;
         }
     }
 
+    @Override
+    public void invalidate(String address) {
+        Network.getCache().remove(address == null ? baseUrl : baseUrl + "/addrs/" + address + "/balance");
+    }
+
     @Override
     public BigInteger getFeeEstimate() {
         try {
             String url = baseUrl;
-            JSONObject data = new JSONObject(urlFetch(url));
+            JSONObject data = new JSONObject(Network.urlFetchCached(url, ttl));
             if (confirmations > 6) {
                 return BigInteger.valueOf(data.optLong("low_fee_per_kb", 0));
             }
@@ -80,7 +100,7 @@ public class BlockcypherAPI implements Service {
     public BigInteger getBalance(String address) {
         try {
             String url = baseUrl + "/addrs/" + address+ "/balance";
-            JSONObject data = new JSONObject(urlFetch(url));
+            JSONObject data = new JSONObject(Network.urlFetchCached(url, ttl));
             long balance = data.getLong("final_balance");
             return BigInteger.valueOf(balance);
         } catch (Exception e) {
@@ -88,129 +108,341 @@ public class BlockcypherAPI implements Service {
         }
     }
 
+    @Override
+    public Map<String, BigInteger> getBalances(List<String> addresses) {
+        Map<String, BigInteger> balances = new HashMap<>();
+        for (List<String> chunk : Service.chunks(addresses, BATCH)) {
+            Map<String, BigInteger> batch = getBalanceBatch(chunk);
+            balances.putAll(batch != null ? batch : Service.super.getBalances(chunk));
+        }
+        return balances;
+    }
+
+    private Map<String, BigInteger> getBalanceBatch(List<String> addresses) {
+        try {
+            StringBuilder url = new StringBuilder(baseUrl + "/addrs/");
+            for (int i = 0; i < addresses.size(); i++) {
+                if (i > 0) url.append(';');
+                url.append(addresses.get(i));
+            }
+            url.append("/balance");
+            return Network.urlStream(url.toString(), addresses.size(), (Reader in) -> {
+                JsonReader reader = new JsonReader(in);
+                Map<String, BigInteger> balances = new HashMap<>();
+                // a single address comes back as a bare object
+                if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    decodeBalance(reader, balances);
+                } else {
+                    reader.beginArray();
+                    while (reader.hasNext()) decodeBalance(reader, balances);
+                    reader.endArray();
+                }
+                return balances;
+            });
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static void decodeBalance(JsonReader reader, Map<String, BigInteger> balances) throws IOException {
+        String address = null;
+        long balance = -1;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "address": address = Json.nextString(reader); break;
+                case "final_balance": balance = Json.nextLong(reader, -1); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (address != null && balance != -1) balances.put(address, BigInteger.valueOf(balance));
+    }
+
     @Override
     public List<HistoryItem> getHistory(String address, long height) {
+        HistoryPage page = fetchHistory(address, "after=" + height + "&");
+        return page == null ? null : page.items;
+    }
+
+    @Override
+    public HistoryPage getHistoryPage(String address, String cursor) {
+        HistoryPage page = fetchHistory(address, cursor == null ? "" : "before=" + cursor + "&");
+        if (page != null) page.cursor = next(cursor, page.cursor);
+        return page;
+    }
+
+    // before is exclusive and a page may end halfway through a block, so the lowest block
+    // is fetched again unless it alone filled the previous page
+    static String next(String cursor, String lowest) {
+        if (lowest == null) return null;
+        long next = Long.parseLong(lowest) + 1;
+        if (cursor != null && Long.parseLong(cursor) == next) next--;
+        return String.valueOf(next);
+    }
+
+    // the page cursor is set to the lowest confirmed block when more transactions follow
+    private HistoryPage fetchHistory(String address, String filter) {
         if (confirmations != 0)
             try {
-                String url = baseUrl + "/addrs/" + address + "/full?after=" + height + "&limit=50";
-                JSONObject data = new JSONObject(urlFetch(url));
-                List<HistoryItem> list = new ArrayList<>();
-                SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
-                dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-                JSONArray items = data.optJSONArray("txs");
-                if (items != null) {
-                    for (int i = 0; i < items.length(); i++) {
-                        JSONObject item = items.getJSONObject(i);
-                        String hash = item.getString("hash");
-                        long block = item.optLong("block_height", Long.MAX_VALUE);
-                        if (block < 0) block = Long.MAX_VALUE;
-                        String timestamp = item.optString("confirmed", "");
-                        int time = timestamp.equals("") ? 0 : (int) (dateFormat.parse(timestamp).getTime() / 1000);
-                        BigInteger fee = BigInteger.valueOf(item.optLong("fees", 0));
-                        BigInteger amount = BigInteger.ZERO;
-                        JSONArray inputs = item.optJSONArray("inputs");
-                        if (inputs != null) {
-                            for (int j = 0; j < inputs.length(); j++) {
-                                JSONObject input = inputs.getJSONObject(j);
-                                BigInteger value = BigInteger.valueOf(input.optLong("output_value", 0));
-                                JSONArray addresses = input.optJSONArray("addresses");
-                                if (addresses != null) {
-                                    boolean found = false;
-                                    for (int k = 0; k < addresses.length(); k++) {
-                                        String source = addresses.optString(k, null);
-                                        if (address.equals(source)) {
-                                            found = true;
-                                            break;
-                                        }
-                                    }
-                                    if (found) amount = amount.subtract(value);
-                                }
-                            }
-                        }
-                        JSONArray outputs = item.optJSONArray("outputs");
-                        if (outputs != null) {
-                            for (int j = 0; j < outputs.length(); j++) {
-                                JSONObject output = outputs.getJSONObject(j);
-                                BigInteger value = BigInteger.valueOf(output.optLong("value", 0));
-                                JSONArray addresses = output.optJSONArray("addresses");
-                                if (addresses != null) {
-                                    boolean found = false;
-                                    for (int k = 0; k < addresses.length(); k++) {
-                                        String target = addresses.optString(k, null);
-                                        if (address.equals(target)) {
-                                            found = true;
-                                            break;
-                                        }
-                                    }
-                                    if (found) amount = amount.add(value);
-                                }
-                            }
+                String url = baseUrl + "/addrs/" + address + "/full?" + filter + "limit=50";
+                return Network.urlStream(url, (Reader in) -> {
+                    JsonReader reader = new JsonReader(in);
+                    List<HistoryItem> list = new ArrayList<>();
+                    boolean more = false;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String name = reader.nextName();
+                        if (name.equals("txs") && Json.beginArray(reader)) {
+                            Set<String> owned = Collections.singleton(address);
+                            while (reader.hasNext()) list.add(decodeFullHistoryItem(reader, owned, null).item(address));
+                            reader.endArray();
+                        } else if (name.equals("hasMore")) {
+                            more = Json.nextBoolean(reader, false);
+                        } else {
+                            reader.skipValue();
                         }
-                        HistoryItem o = new HistoryItem();
-                        o.hash = hash;
-                        o.time = time;
-                        o.block = block;
-                        o.amount = amount;
-                        o.fee = fee;
-                        list.add(o);
                     }
-                }
-                return list;
+                    reader.endObject();
+                    return page(list, more);
+                });
             } catch (Exception e) {
                 return null;
             }
         else
             try {
-                String url = baseUrl + "/addrs/" + address + "?after=" + height + "&limit=50";
-                JSONObject data = new JSONObject(urlFetch(url));
-                List<HistoryItem> list = new ArrayList<>();
-                SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
-                JSONArray items1 = data.optJSONArray("txrefs");
-                if (items1 != null) {
-                    for (int i = 0; i < items1.length(); i++) {
-                        JSONObject item = items1.getJSONObject(i);
-                        String hash = item.getString("tx_hash");
-                        long block = item.optLong("block_height", Long.MAX_VALUE);
-                        if (block < 0) block = Long.MAX_VALUE;
-                        String timestamp = item.optString("confirmed", "");
-                        int time = timestamp.equals("") ? 0 : (int) (dateFormat.parse(timestamp).getTime() / 1000);
-                        BigInteger fee = BigInteger.ZERO; // TODO missing fee
-                        BigInteger amount = BigInteger.valueOf(item.optLong("value", 0));
-                        if (item.getInt("tx_output_n") == -1) amount = amount.negate();
-                        HistoryItem o = new HistoryItem();
-                        o.hash = hash;
-                        o.time = time;
-                        o.block = block;
-                        o.amount = amount;
-                        o.fee = fee;
-                        list.add(o);
+                String url = baseUrl + "/addrs/" + address + "?" + filter + "limit=50";
+                return Network.urlStream(url, (Reader in) -> {
+                    JsonReader reader = new JsonReader(in);
+                    List<HistoryItem> list = new ArrayList<>();
+                    boolean more = false;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String name = reader.nextName();
+                        if ((name.equals("txrefs") || name.equals("unconfirmed_txrefs")) && Json.beginArray(reader)) {
+                            while (reader.hasNext()) list.add(decodeHistoryItem(reader));
+                            reader.endArray();
+                        } else if (name.equals("hasMore")) {
+                            more = Json.nextBoolean(reader, false);
+                        } else {
+                            reader.skipValue();
+                        }
                     }
+                    reader.endObject();
+                    return page(list, more);
+                });
+            } catch (Exception e) {
+                return null;
+            }
+    }
+
+    static HistoryPage page(List<HistoryItem> items, boolean more) {
+        HistoryPage page = new HistoryPage();
+        page.items = items;
+        long lowest = Long.MAX_VALUE;
+        for (HistoryItem item : items) lowest = Math.min(lowest, item.block);
+        if (more && lowest != Long.MAX_VALUE) page.cursor = String.valueOf(lowest);
+        return page;
+    }
+
+    @Override
+    public Map<String, List<HistoryItem>> getHistories(List<String> addresses, long height) {
+        // unconfirmed txrefs carry no addresses to attribute, keep fetching them per address
+        if (confirmations == 0) return Service.super.getHistories(addresses, height);
+        Map<String, List<HistoryItem>> histories = new HashMap<>();
+        for (List<String> chunk : Service.chunks(addresses, BATCH)) {
+            Map<String, List<HistoryItem>> batch = getHistoryBatch(chunk, height);
+            histories.putAll(batch != null ? batch : Service.super.getHistories(chunk, height));
+        }
+        return histories;
+    }
+
+    // a transaction listed under several owned addresses is decoded once and attributed to each
+    private Map<String, List<HistoryItem>> getHistoryBatch(List<String> addresses, long height) {
+        try {
+            StringBuilder url = new StringBuilder(baseUrl + "/addrs/");
+            for (int i = 0; i < addresses.size(); i++) {
+                if (i > 0) url.append(';');
+                url.append(addresses.get(i));
+            }
+            url.append("/full?after=").append(height).append("&limit=50");
+            Set<String> owned = new HashSet<>(addresses);
+            return Network.urlStream(url.toString(), addresses.size(), (Reader in) -> {
+                JsonReader reader = new JsonReader(in);
+                Map<String, List<HistoryItem>> histories = new HashMap<>();
+                Set<String> seen = new HashSet<>();
+                if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    decodeAddressHistory(reader, owned, seen, histories);
+                } else {
+                    reader.beginArray();
+                    while (reader.hasNext()) decodeAddressHistory(reader, owned, seen, histories);
+                    reader.endArray();
+                }
+                return histories;
+            });
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    static void decodeAddressHistory(JsonReader reader, Set<String> owned, Set<String> seen, Map<String, List<HistoryItem>> histories) throws IOException {
+        String address = null;
+        List<FullHistoryItem> txs = new ArrayList<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("address")) {
+                address = Json.nextString(reader);
+            } else if (name.equals("txs") && Json.beginArray(reader)) {
+                while (reader.hasNext()) {
+                    FullHistoryItem t = decodeFullHistoryItem(reader, owned, seen);
+                    if (t != null) txs.add(t);
                 }
-                JSONArray items2 = data.optJSONArray("unconfirmed_txrefs");
-                if (items2 != null) {
-                    for (int i = 0; i < items2.length(); i++) {
-                        JSONObject item = items2.getJSONObject(i);
-                        String hash = item.getString("tx_hash");
-                        long block = item.optLong("block_height", Long.MAX_VALUE);
-                        if (block < 0) block = Long.MAX_VALUE;
-                        String timestamp = item.optString("confirmed", "");
-                        int time = timestamp.equals("") ? 0 : (int) (dateFormat.parse(timestamp).getTime() / 1000);
-                        BigInteger fee = BigInteger.ZERO; // TODO missing fee
-                        BigInteger amount = BigInteger.valueOf(item.optLong("value", 0));
-                        if (item.getInt("tx_output_n") == -1) amount = amount.negate();
-                        HistoryItem o = new HistoryItem();
-                        o.hash = hash;
-                        o.time = time;
-                        o.block = block;
-                        o.amount = amount;
-                        o.fee = fee;
-                        list.add(o);
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (address == null || !owned.contains(address)) throw new IOException("Unexpected address " + address);
+        if (!histories.containsKey(address)) histories.put(address, new ArrayList<>());
+        for (FullHistoryItem t : txs) {
+            t.amounts.put(address, t.amounts.containsKey(address) ? t.amounts.get(address) : BigInteger.ZERO);
+            for (String owner : t.amounts.keySet()) {
+                List<HistoryItem> list = histories.get(owner);
+                if (list == null) histories.put(owner, list = new ArrayList<>());
+                list.add(t.item(owner));
+            }
+        }
+    }
+
+    private static int parseTime(String timestamp) throws IOException {
+        if (timestamp == null || timestamp.equals("")) return 0;
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        try {
+            return (int) (dateFormat.parse(timestamp).getTime() / 1000);
+        } catch (ParseException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    // a transaction decoded once for a set of owned addresses, with the signed amount of each one it touches
+    private static final class FullHistoryItem {
+        final HistoryItem item = new HistoryItem();
+        final Map<String, BigInteger> amounts = new HashMap<>();
+
+        HistoryItem item(String address) {
+            HistoryItem o = new HistoryItem();
+            o.hash = item.hash;
+            o.block = item.block;
+            o.time = item.time;
+            o.fee = item.fee;
+            BigInteger amount = amounts.get(address);
+            o.amount = amount == null ? BigInteger.ZERO : amount;
+            return o;
+        }
+
+        void add(String address, BigInteger value) {
+            BigInteger amount = amounts.get(address);
+            amounts.put(address, amount == null ? value : amount.add(value));
+        }
+    }
+
+    // returns null, skipping the rest of the object, for a hash already in seen
+    private static FullHistoryItem decodeFullHistoryItem(JsonReader reader, Set<String> owned, Set<String> seen) throws IOException {
+        FullHistoryItem t = new FullHistoryItem();
+        HistoryItem o = t.item;
+        o.block = Long.MAX_VALUE;
+        o.fee = BigInteger.ZERO;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "hash":
+                    o.hash = Json.nextString(reader);
+                    if (seen != null && o.hash != null && !seen.add(o.hash)) {
+                        while (reader.hasNext()) {
+                            reader.nextName();
+                            reader.skipValue();
+                        }
+                        reader.endObject();
+                        return null;
+                    }
+                    break;
+                case "block_height": o.block = Json.nextLong(reader, Long.MAX_VALUE); break;
+                case "confirmed": o.time = parseTime(Json.nextString(reader)); break;
+                case "fees": o.fee = BigInteger.valueOf(Json.nextLong(reader, 0)); break;
+                case "inputs":
+                    if (!Json.beginArray(reader)) break;
+                    while (reader.hasNext()) decodeOwnedValue(reader, "output_value", owned, t, true);
+                    reader.endArray();
+                    break;
+                case "outputs":
+                    if (!Json.beginArray(reader)) break;
+                    while (reader.hasNext()) decodeOwnedValue(reader, "value", owned, t, false);
+                    reader.endArray();
+                    break;
+                default: reader.skipValue(); break;
+            }
+        }
+        reader.endObject();
+        Json.require(o.hash, "hash");
+        if (o.block < 0) o.block = Long.MAX_VALUE;
+        return t;
+    }
+
+    private static void decodeOwnedValue(JsonReader reader, String valueName, Set<String> owned, FullHistoryItem t, boolean spent) throws IOException {
+        long value = 0;
+        Set<String> found = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals(valueName)) {
+                value = Json.nextLong(reader, 0);
+            } else if (name.equals("addresses")) {
+                if (!Json.beginArray(reader)) continue;
+                while (reader.hasNext()) {
+                    String address = Json.nextString(reader);
+                    if (address != null && owned.contains(address)) {
+                        if (found == null) found = new HashSet<>();
+                        found.add(address);
                     }
                 }
-                return list;
-            } catch (Exception e) {
-                return null;
+                reader.endArray();
+            } else {
+                reader.skipValue();
             }
+        }
+        reader.endObject();
+        if (found == null) return;
+        BigInteger amount = BigInteger.valueOf(spent ? -value : value);
+        for (String address : found) t.add(address, amount);
+    }
+
+    static HistoryItem decodeHistoryItem(JsonReader reader) throws IOException {
+        HistoryItem o = new HistoryItem();
+        o.block = Long.MAX_VALUE;
+        o.fee = BigInteger.ZERO; // TODO missing fee
+        long value = 0;
+        Long index = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "tx_hash": o.hash = Json.nextString(reader); break;
+                case "block_height": o.block = Json.nextLong(reader, Long.MAX_VALUE); break;
+                case "confirmed": o.time = parseTime(Json.nextString(reader)); break;
+                case "value": value = Json.nextLong(reader, 0); break;
+                case "tx_output_n": index = reader.nextLong(); break;
+                default: reader.skipValue(); break;
+            }
+        }
+        reader.endObject();
+        Json.require(o.hash, "tx_hash");
+        Json.require(index, "tx_output_n");
+        if (o.block < 0) o.block = Long.MAX_VALUE;
+        o.amount = BigInteger.valueOf(value);
+        if (index == -1) o.amount = o.amount.negate();
+        return o;
     }
 
     @Override
@@ -218,41 +450,151 @@ public class BlockcypherAPI implements Service {
         if (confirmations == 0) return new ArrayList<>();
         try {
             String url = baseUrl + "/addrs/" + address + "?unspentOnly=1";
-            JSONObject data = new JSONObject(urlFetch(url));
-            List<UTXO> list = new ArrayList<>();
-            JSONArray items1 = data.optJSONArray("txrefs");
-            if (items1 != null) {
-                for (int i = 0; i < items1.length(); i++) {
-                    JSONObject item = items1.getJSONObject(i);
-                    String hash = item.getString("tx_hash");
-                    int index = (int) item.getLong("tx_output_n");
-                    BigInteger amount = BigInteger.valueOf(item.getLong("value"));
-                    boolean spent = item.optBoolean("spent", true);
-                    if (spent) continue;
-                    UTXO o = new UTXO();
-                    o.hash = hash;
-                    o.index = index;
-                    o.amount = amount;
-                    list.add(o);
+            return Network.urlStream(url, (Reader in) -> {
+                JsonReader reader = new JsonReader(in);
+                List<UTXO> list = new ArrayList<>();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if ((name.equals("txrefs") || name.equals("unconfirmed_txrefs")) && Json.beginArray(reader)) {
+                        while (reader.hasNext()) {
+                            UTXO o = decodeUTXO(reader);
+                            if (o != null) list.add(o);
+                        }
+                        reader.endArray();
+                    } else {
+                        reader.skipValue();
+                    }
                 }
+                reader.endObject();
+                return list;
+            });
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    static UTXO decodeUTXO(JsonReader reader) throws IOException {
+        UTXO o = new UTXO();
+        Long index = null;
+        Long value = null;
+        boolean spent = true;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "tx_hash": o.hash = Json.nextString(reader); break;
+                case "tx_output_n": index = reader.nextLong(); break;
+                case "value": value = reader.nextLong(); break;
+                case "spent": spent = Json.nextBoolean(reader, true); break;
+                default: reader.skipValue(); break;
             }
-            JSONArray items2 = data.optJSONArray("unconfirmed_txrefs");
-            if (items2 != null) {
-                for (int i = 0; i < items2.length(); i++) {
-                    JSONObject item = items2.getJSONObject(i);
-                    String hash = item.getString("tx_hash");
-                    int index = (int) item.getLong("tx_output_n");
-                    BigInteger amount = BigInteger.valueOf(item.getLong("value"));
-                    boolean spent = item.optBoolean("spent", true);
-                    if (spent) continue;
-                    UTXO o = new UTXO();
-                    o.hash = hash;
-                    o.index = index;
-                    o.amount = amount;
-                    list.add(o);
+        }
+        reader.endObject();
+        Json.require(o.hash, "tx_hash");
+        o.index = (int) (long) Json.require(index, "tx_output_n");
+        o.amount = BigInteger.valueOf(Json.require(value, "value"));
+        return spent ? null : o;
+    }
+
+    @Override
+    public Map<String, Long> getTransactionStatus(List<String> txids) {
+        Map<String, Long> status = new HashMap<>();
+        for (List<String> chunk : Service.chunks(txids, BATCH)) {
+            try {
+                StringBuilder url = new StringBuilder(baseUrl + "/txs/");
+                for (int i = 0; i < chunk.size(); i++) {
+                    if (i > 0) url.append(';');
+                    url.append(chunk.get(i));
                 }
+                status.putAll(Network.urlStream(url.toString(), chunk.size(), (Reader in) -> {
+                    JsonReader reader = new JsonReader(in);
+                    Map<String, Long> batch = new HashMap<>();
+                    // a single transaction comes back as a bare object
+                    if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                        decodeStatus(reader, batch);
+                    } else {
+                        reader.beginArray();
+                        while (reader.hasNext()) decodeStatus(reader, batch);
+                        reader.endArray();
+                    }
+                    return batch;
+                }));
+            } catch (Exception e) {
+                // left out, the caller asks again later
             }
-            return list;
+        }
+        return status;
+    }
+
+    static void decodeStatus(JsonReader reader, Map<String, Long> status) throws IOException {
+        String hash = null;
+        long block = Long.MAX_VALUE;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "hash": hash = Json.nextString(reader); break;
+                case "block_height": block = Json.nextLong(reader, Long.MAX_VALUE); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (block < 0) block = Long.MAX_VALUE;
+        if (hash != null) status.put(hash, block);
+    }
+
+    // account chains need only the address object, utxo chains fetch unspent txrefs and /full in parallel
+    @Override
+    public Snapshot getSnapshot(String address, long height, Lambda<HistoryItem, Boolean> sink) {
+        if (confirmations == 0) {
+            List<HistoryItem> history = new ArrayList<>();
+            Snapshot snapshot = fetchAddress(address, "after=" + height + "&limit=50", history);
+            if (snapshot == null) return new Snapshot();
+            snapshot.history = Service.feed(history, sink);
+            return snapshot;
+        }
+        Future<Snapshot> unspent = Network.fork(() -> fetchAddress(address, "unspentOnly=1", null), Network.getDeadline());
+        HistoryPage page = fetchHistory(address, "after=" + height + "&");
+        Snapshot snapshot = Service.join(unspent, null);
+        if (snapshot == null) snapshot = new Snapshot();
+        snapshot.sequence = 0;
+        snapshot.history = Service.feed(page == null ? null : page.items, sink);
+        return snapshot;
+    }
+
+    // txrefs are read as history items when there is a list to take them, as unspent outputs otherwise
+    private Snapshot fetchAddress(String address, String filter, List<HistoryItem> history) {
+        try {
+            String url = baseUrl + "/addrs/" + address + "?" + filter;
+            return Network.urlStream(url, (Reader in) -> {
+                JsonReader reader = new JsonReader(in);
+                Snapshot snapshot = new Snapshot();
+                List<UTXO> utxos = new ArrayList<>();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if ((name.equals("txrefs") || name.equals("unconfirmed_txrefs")) && Json.beginArray(reader)) {
+                        while (reader.hasNext()) {
+                            if (history == null) {
+                                UTXO o = decodeUTXO(reader);
+                                if (o != null) utxos.add(o);
+                            } else {
+                                history.add(decodeHistoryItem(reader));
+                            }
+                        }
+                        reader.endArray();
+                    } else if (name.equals("final_balance")) {
+                        long balance = Json.nextLong(reader, -1);
+                        if (balance != -1) snapshot.balance = BigInteger.valueOf(balance);
+                    } else if (name.equals("nonce")) {
+                        snapshot.sequence = Json.nextLong(reader, -1);
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                snapshot.utxos = history == null ? utxos : new ArrayList<>();
+                return snapshot;
+            });
         } catch (Exception e) {
             return null;
         }
@@ -263,7 +605,7 @@ public class BlockcypherAPI implements Service {
         if (confirmations != 0) return 0;
         try {
             String url = baseUrl + "/addrs/" + address+ "/balance";
-            JSONObject data = new JSONObject(urlFetch(url));
+            JSONObject data = new JSONObject(Network.urlFetchCached(url, ttl));
             return data.getLong("nonce");
         } catch (Exception e) {
             return -1;
@@ -275,7 +617,7 @@ public class BlockcypherAPI implements Service {
         try {
             String url = baseUrl + "/txs/push";
             String content = "{\"tx\":\"" + transaction + "\"}";
-            JSONObject data = new JSONObject(urlFetch(url, content));
+            JSONObject data = new JSONObject(Network.urlFetch(url, content));
             return data.getString("hash");
         } catch (Exception e) {
             return null;
@@ -1,5 +1,7 @@
 package com.gudcoinwallet.android.crypto;
 
+import java.math.BigInteger;
+
 public interface Coin {
     enum AddressMode { ACCOUNT, UTXO };
     String getName();
@@ -11,6 +13,8 @@ public interface Coin {
     int getMinConf();
     AddressMode getMode();
     Coin getFeeCoin();
+    String getChainKey();
+    BigInteger getFixedFee();
     Service getService(boolean testnet);
     String getTransactionUrl(String hash, boolean testnet);
 }
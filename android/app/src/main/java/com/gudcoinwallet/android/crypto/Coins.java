@@ -2,9 +2,13 @@ package com.gudcoinwallet.android.crypto;
 
 import com.raugfer.crypto.coins;
 
+import java.math.BigInteger;
+
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 public final class Coins {
 
@@ -13,6 +17,9 @@ public final class Coins {
 
     private static final Map<String, Coin> registry = new HashMap<>();
 
+    // one service per coin and network, so that per-node state is shared by every sync
+    private static final Map<String, Service> services = new HashMap<>();
+
     static {
         registry.put(waves.getCode(), waves);
         registry.put(gudcoin.getCode(), gudcoin);
@@ -26,6 +33,21 @@ public final class Coins {
         return registry.values().iterator();
     }
 
+    // points the push channel of a coin at an event stream, null falls back to polling
+    public static void setPushUrl(String code, boolean testnet, String url) {
+        Service service = findCoin(code).getService(testnet);
+        if (service instanceof Service.Push) ((Service.Push) service).setUrl(url);
+    }
+
+    // asset ids of the registered waves tokens
+    public static Set<String> getAssetIds(boolean testnet) {
+        Set<String> assetIds = new HashSet<>();
+        for (Coin coin : registry.values()) {
+            if (coin instanceof WavesToken) assetIds.add(((WavesToken) coin).getAssetId(testnet));
+        }
+        return assetIds;
+    }
+
     private static abstract class AbstractCoin implements Coin {
 
         @Override
@@ -57,6 +79,33 @@ public final class Coins {
         public Coin getFeeCoin() {
             return this;
         }
+
+        // coins served by the same nodes share a chain key and therefore a tip height
+        @Override
+        public String getChainKey() {
+            return getLabel();
+        }
+
+        // null when the fee has to be estimated by the service
+        @Override
+        public BigInteger getFixedFee() {
+            return null;
+        }
+
+        @Override
+        public final Service getService(boolean testnet) {
+            String key = getCode() + ":" + testnet;
+            synchronized (services) {
+                Service service = services.get(key);
+                if (service == null) {
+                    service = createService(testnet);
+                    services.put(key, service);
+                }
+                return service;
+            }
+        }
+
+        protected abstract Service createService(boolean testnet);
     }
 
     private static class Waves extends AbstractCoin {
@@ -80,15 +129,42 @@ public final class Coins {
             return null;
         }
 
-        @Override
-        public Service getService(boolean testnet) {
-            if (testnet) {
-                return new WavesnodesAPI("https://pool.testnet.wavesnodes.com/", true, 100000);
-            } else {
-                return new WavesnodesAPI("https://nodes.wavesnodes.com/", false, 100000);
+        private static final String[] MAINNET_NODES = {
+            "https://nodes.wavesnodes.com/",
+            "https://nodes.wx.network/",
+        };
+
+        private static final String[] TESTNET_NODES = {
+            "https://pool.testnet.wavesnodes.com/",
+            "https://nodes-testnet.wavesnodes.com/",
+        };
+
+        protected Service createService(boolean testnet, String assetId, long fee) {
+            String[] nodes = testnet ? TESTNET_NODES : MAINNET_NODES;
+            Service[] backends = new Service[nodes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                backends[i] = new WavesnodesAPI(nodes[i], assetId, testnet, fee, getBlockTime());
             }
+            return new Service.Push(new Service.SingleFlight(getCode() + ":" + testnet, new Service.Multi(backends, true)), null);
+        }
+
+        @Override
+        protected Service createService(boolean testnet) {
+            return createService(testnet, null, getFee());
+        }
+
+        @Override
+        public final String getChainKey() {
+            return "waves";
         }
 
+        @Override
+        public final BigInteger getFixedFee() {
+            return BigInteger.valueOf(getFee());
+        }
+
+        public long getFee() { return 100000; }
+
         @Override
         public String getTransactionUrl(String hash, boolean testnet) {
             if (testnet) {
@@ -105,17 +181,13 @@ public final class Coins {
             return findCoin("WAVES");
         }
 
-        public long getFee() { return 100000; }
+        public String getAssetId(boolean testnet) {
+            return coins.attr("asset.id", getLabel(), testnet);
+        }
 
         @Override
-        public Service getService(boolean testnet) {
-            String assetId = coins.attr("asset.id", getLabel(), testnet);
-            long fee = getFee();
-            if (testnet) {
-                return new WavesnodesAPI("https://pool.testnet.wavesnodes.com/", assetId, true, fee);
-            } else {
-                return new WavesnodesAPI("https://nodes.wavesnodes.com/", assetId, false, fee);
-            }
+        protected Service createService(boolean testnet) {
+            return createService(testnet, getAssetId(testnet), getFee());
         }
     }
 
@@ -0,0 +1,50 @@
+package com.gudcoinwallet.android.crypto;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.IOException;
+
+final class Json {
+
+    private Json() {}
+
+    static String nextString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    static long nextLong(JsonReader reader, long defaultValue) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return defaultValue;
+        }
+        return reader.nextLong();
+    }
+
+    static boolean nextBoolean(JsonReader reader, boolean defaultValue) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return defaultValue;
+        }
+        return reader.nextBoolean();
+    }
+
+    static boolean beginArray(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return false;
+        }
+        reader.beginArray();
+        return true;
+    }
+
+    static <T> T require(T value, String name) throws IOException {
+        if (value == null) throw new IOException("Missing field " + name);
+        return value;
+    }
+
+}
@@ -1,7 +1,26 @@
 package com.gudcoinwallet.android.crypto;
 
+import com.gudcoinwallet.android.Continuation;
+import com.gudcoinwallet.android.EventSource;
+import com.gudcoinwallet.android.Lambda;
+import com.gudcoinwallet.android.Network;
+
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public interface Service {
 
@@ -14,6 +33,139 @@ public interface Service {
     String broadcast(String transaction);
     Object custom(String name, Object arg);
 
+    // addresses whose balance could not be fetched are left out of the map
+    default Map<String, BigInteger> getBalances(List<String> addresses) {
+        Map<String, BigInteger> balances = new HashMap<>();
+        for (String address : addresses) {
+            BigInteger balance = getBalance(address);
+            if (balance != null) balances.put(address, balance);
+        }
+        return balances;
+    }
+
+    // history of several addresses from the given height, failed addresses are left out of the map
+    default Map<String, List<HistoryItem>> getHistories(List<String> addresses, long height) {
+        Map<String, List<HistoryItem>> histories = new HashMap<>();
+        for (String address : addresses) {
+            List<HistoryItem> history = getHistory(address, height);
+            if (history != null) histories.put(address, history);
+        }
+        return histories;
+    }
+
+    // pages backwards from the newest transaction, null on failure; the default has a single page
+    default HistoryPage getHistoryPage(String address, String cursor) {
+        List<HistoryItem> items = getHistory(address, 0);
+        if (items == null) return null;
+        HistoryPage page = new HistoryPage();
+        page.items = items;
+        return page;
+    }
+
+    // items go to the sink newest first as they decode, until it returns false or history drops below height
+    default boolean streamHistory(String address, long height, Lambda<HistoryItem, Boolean> sink) {
+        String cursor = null;
+        do {
+            HistoryPage page = getHistoryPage(address, cursor);
+            if (page == null) return false;
+            for (HistoryItem item : page.items) {
+                if (item.block < height || !sink.apply(item)) return true;
+            }
+            cursor = page.cursor;
+        } while (cursor != null);
+        return true;
+    }
+
+    // block of each transaction by id, Long.MAX_VALUE in the mempool; unknown ids are left out
+    default Map<String, Long> getTransactionStatus(List<String> txids) {
+        return Collections.emptyMap();
+    }
+
+    // balance, sequence and utxos in parallel with the history streamed to the sink, one page without a height
+    default Snapshot getSnapshot(String address, long height, Lambda<HistoryItem, Boolean> sink) {
+        long deadline = Network.getDeadline();
+        Future<BigInteger> balance = Network.fork(() -> getBalance(address), deadline);
+        Future<Long> sequence = Network.fork(() -> getSequence(address), deadline);
+        Future<List<UTXO>> utxos = Network.fork(() -> getUTXOs(address), deadline);
+        Snapshot snapshot = new Snapshot();
+        snapshot.history = height > 0 ? streamHistory(address, height, sink) : feed(getHistory(address, 0), sink);
+        snapshot.balance = join(balance, null);
+        snapshot.sequence = join(sequence, -1L);
+        snapshot.utxos = join(utxos, null);
+        return snapshot;
+    }
+
+    // hands fetched items to the sink until it stops, false if the fetch failed
+    static boolean feed(List<HistoryItem> items, Lambda<HistoryItem, Boolean> sink) {
+        if (items == null) return false;
+        for (HistoryItem item : items) {
+            if (!sink.apply(item)) break;
+        }
+        return true;
+    }
+
+    static <T> T join(Future<T> future, T failure) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            return failure;
+        } catch (ExecutionException e) {
+            return failure;
+        }
+    }
+
+    // push notifications of blocks and address activity, null when the backend has none
+    default EventSource subscribe(List<String> addresses, Subscriber subscriber) {
+        return null;
+    }
+
+    // drops cached responses for the address, or for the chain tip when null, after an event
+    default void invalidate(String address) {
+    }
+
+    static <T> List<List<T>> chunks(List<T> list, int size) {
+        List<List<T>> chunks = new ArrayList<>();
+        for (int i = 0; i < list.size(); i += size) {
+            chunks.add(list.subList(i, Math.min(list.size(), i + size)));
+        }
+        return chunks;
+    }
+
+    // a cheap uncached request used to measure backend health, returns the height or -1
+    default long probe() {
+        return getHeight();
+    }
+
+    default Future<Long> getHeightAsync(long deadline, Continuation<Long> cont) {
+        return Network.async(this::getHeight, deadline, cont);
+    }
+
+    default Future<BigInteger> getFeeEstimateAsync(long deadline, Continuation<BigInteger> cont) {
+        return Network.async(this::getFeeEstimate, deadline, cont);
+    }
+
+    default Future<BigInteger> getBalanceAsync(String address, long deadline, Continuation<BigInteger> cont) {
+        return Network.async(() -> getBalance(address), deadline, cont);
+    }
+
+    default Future<List<HistoryItem>> getHistoryAsync(String address, long height, long deadline, Continuation<List<HistoryItem>> cont) {
+        return Network.async(() -> getHistory(address, height), deadline, cont);
+    }
+
+    default Future<List<UTXO>> getUTXOsAsync(String address, long deadline, Continuation<List<UTXO>> cont) {
+        return Network.async(() -> getUTXOs(address), deadline, cont);
+    }
+
+    default Future<Long> getSequenceAsync(String address, long deadline, Continuation<Long> cont) {
+        return Network.async(() -> getSequence(address), deadline, cont);
+    }
+
+    default Future<String> broadcastAsync(String transaction, long deadline, Continuation<String> cont) {
+        return Network.async(() -> broadcast(transaction), deadline, cont);
+    }
+
     public final class HistoryItem {
         public String hash;
         public int time;
@@ -22,83 +174,334 @@ public interface Service {
         public BigInteger fee;
     };
 
+    public interface Subscriber {
+        void onBlock(long height);
+        void onActivity(String address);
+        void onConnected(boolean connected);
+    }
+
+    public final class HistoryPage {
+        public List<HistoryItem> items;
+        public String cursor; // of the next page, null once the start of history is reached
+    }
+
     public final class UTXO {
         public String hash;
         public int index;
         public BigInteger amount;
     }
 
+    // parts that could not be fetched are left null, the sequence at -1
+    public final class Snapshot {
+        public BigInteger balance;
+        public long sequence = -1;
+        public List<UTXO> utxos;
+        public boolean history;
+
+        public boolean complete() {
+            return balance != null && sequence != -1 && utxos != null && history;
+        }
+    }
+
     public static class Multi implements Service {
 
+        private static final int RECENT = 32;
+        private static final int MIN_RECENT = 8;
+        private static final double HEDGE_QUANTILE = 0.95;
+        private static final long DEFAULT_HEDGE_DELAY = 1000;
+        private static final long MIN_HEDGE_DELAY = 50;
+        private static final double DECAY = 0.2;
+        private static final long ERROR_PENALTY = 5000;
+        private static final long PROBE_INTERVAL = 60 * 1000;
+
         private final Service[] services;
+        private final boolean hedged;
+        private final long[][] recent;
+        private final long[] samples;
+        private final double[] latency;
+        private final double[] errors;
+        private long lastProbe = 0;
 
         public Multi(Service[] services) {
+            this(services, false);
+        }
+
+        // hedged reads start on the healthiest backend and launch the next one past its p95 latency
+        public Multi(Service[] services, boolean hedged) {
             this.services = services;
+            this.hedged = hedged;
+            recent = new long[services.length][RECENT];
+            samples = new long[services.length];
+            latency = new double[services.length];
+            errors = new double[services.length];
+        }
+
+        // exponentially decayed latency and error rate, a failure weighs like ERROR_PENALTY ms
+        private synchronized void record(int index, long elapsed, Boolean success) {
+            latency[index] = latency[index] == 0 ? elapsed : latency[index] + DECAY * (elapsed - latency[index]);
+            if (success == null) return;
+            errors[index] += DECAY * ((success ? 0 : 1) - errors[index]);
+            if (success) recent[index][(int) (samples[index]++ % RECENT)] = elapsed;
+        }
+
+        public synchronized double score(int index) {
+            return latency[index] + errors[index] * ERROR_PENALTY;
+        }
+
+        private synchronized Integer[] order() {
+            Integer[] order = new Integer[services.length];
+            for (int i = 0; i < order.length; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> Double.compare(score(a), score(b)));
+            return order;
+        }
+
+        private synchronized long hedgeDelay(int index) {
+            int count = (int) Math.min(samples[index], RECENT);
+            if (count < MIN_RECENT) return DEFAULT_HEDGE_DELAY;
+            long[] values = Arrays.copyOf(recent[index], count);
+            Arrays.sort(values);
+            int rank = (int) Math.ceil(HEDGE_QUANTILE * count) - 1;
+            return Math.max(MIN_HEDGE_DELAY, values[Math.max(0, Math.min(count - 1, rank))]);
+        }
+
+        private void schedule() {
+            if (services.length == 1) return;
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                if (now - lastProbe < PROBE_INTERVAL) return;
+                lastProbe = now;
+            }
+            Network.async(this::probe, 0, null);
         }
 
         @Override
-        public long getHeight() {
-            for (Service service : services) {
-                long height = service.getHeight();
-                if (height != -1) return height;
+        public long probe() {
+            long height = -1;
+            for (int i = 0; i < services.length; i++) {
+                long start = System.currentTimeMillis();
+                long h = services[i].probe();
+                record(i, System.currentTimeMillis() - start, h != -1);
+                height = Math.max(height, h);
             }
-            return -1;
+            return height;
+        }
+
+        private static <T> boolean valid(T result, T failure) {
+            return result != null && !result.equals(failure);
+        }
+
+        private <T> T read(T failure, Lambda<Service, T> call) {
+            schedule();
+            Integer[] order = order();
+            if (!hedged || services.length == 1) {
+                for (int index : order) {
+                    long start = System.currentTimeMillis();
+                    T result = call.apply(services[index]);
+                    boolean success = valid(result, failure);
+                    record(index, System.currentTimeMillis() - start, success);
+                    if (success) return result;
+                }
+                return failure;
+            }
+            // a hedge waits on its attempts, which would freeze the ui instead of failing like a direct fetch
+            if (Network.isMainThread()) throw new IllegalStateException("Hedged read from the main thread, use the async API");
+            // attempts report {index, result, latency}; losers are cancelled, which tears down their connections
+            BlockingQueue<Object[]> done = new LinkedBlockingQueue<>();
+            List<Future<T>> attempts = new ArrayList<>();
+            long[] started = new long[order.length];
+            boolean[] reported = new boolean[services.length];
+            boolean[] primaryReturned = { false };
+            long deadline = Network.getDeadline();
+            int finished = 0;
+            try {
+                // the primary runs on this thread, a timer launches the first hedge and a winning hedge tears the primary down
+                Network.Call<T> primary = attempt(order[0], call, deadline, done, failure, null);
+                started[0] = System.currentTimeMillis();
+                attempts.add(primary);
+                ScheduledFuture<?> timer = Network.schedule(() -> {
+                    synchronized (attempts) {
+                        if (primaryReturned[0]) return;
+                        Network.Call<T> hedge = attempt(order[1], call, deadline, done, failure, primary);
+                        if (!Network.tryFork(hedge)) return;
+                        started[1] = System.currentTimeMillis();
+                        attempts.add(hedge);
+                    }
+                }, hedgeDelay(order[0]));
+                primary.run();
+                synchronized (attempts) {
+                    primaryReturned[0] = true;
+                }
+                timer.cancel(false);
+                while (finished < attempts.size()) {
+                    int last = attempts.size() - 1;
+                    Object[] outcome = last + 1 < order.length ? done.poll(hedgeDelay(order[last]), TimeUnit.MILLISECONDS) : done.take();
+                    if (outcome == null) {
+                        hedge(order, last + 1, call, deadline, done, failure, started, attempts);
+                        continue;
+                    }
+                    finished++;
+                    int index = (Integer) outcome[0];
+                    T result = (T) outcome[1];
+                    boolean success = valid(result, failure);
+                    // a primary torn down by a winning hedge failed for that reason only
+                    record(index, (Long) outcome[2], !success && primary.isCancelled() && index == order[0] ? null : success);
+                    reported[index] = true;
+                    if (success) return result;
+                    if (finished == attempts.size() && attempts.size() < order.length) {
+                        hedge(order, attempts.size(), call, deadline, done, failure, started, attempts);
+                    }
+                }
+                return failure;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return failure;
+            } finally {
+                // a cancelled loser was at least this slow, count that without calling it an error
+                long now = System.currentTimeMillis();
+                for (int i = 0; i < attempts.size(); i++) {
+                    attempts.get(i).cancel(true);
+                    if (!reported[order[i]]) record(order[i], now - started[i], null);
+                }
+            }
+        }
+
+        // past the primary a saturated pool runs the hedge here, it is then simply the next sequential attempt
+        private <T> void hedge(Integer[] order, int position, Lambda<Service, T> call, long deadline, BlockingQueue<Object[]> done, T failure, long[] started, List<Future<T>> attempts) {
+            Network.Call<T> hedge = attempt(order[position], call, deadline, done, failure, null);
+            started[position] = System.currentTimeMillis();
+            attempts.add(hedge);
+            if (!Network.tryFork(hedge)) hedge.run();
+        }
+
+        private <T> Network.Call<T> attempt(int index, Lambda<Service, T> call, long deadline, BlockingQueue<Object[]> done, T failure, Future<T> rival) {
+            Service service = services[index];
+            return Network.call(() -> {
+                long start = System.currentTimeMillis();
+                T result = null;
+                try {
+                    result = call.apply(service);
+                } finally {
+                    done.add(new Object[]{ index, result, System.currentTimeMillis() - start });
+                }
+                // the rival is running on the reading thread, which only gets to this result once it is torn down
+                if (rival != null && valid(result, failure)) rival.cancel(true);
+                return result;
+            }, deadline);
+        }
+
+        @Override
+        public long getHeight() {
+            return read(-1L, Service::getHeight);
         }
 
         @Override
         public BigInteger getFeeEstimate() {
-            for (Service service : services) {
-                BigInteger fee = service.getFeeEstimate();
-                if (fee != null) return fee;
-            }
-            return null;
+            return read(null, Service::getFeeEstimate);
         }
 
         @Override
         public BigInteger getBalance(String address) {
-            for (Service service : services) {
-                BigInteger balance = service.getBalance(address);
-                if (balance != null) return balance;
-            }
-            return null;
+            return read(null, (service) -> service.getBalance(address));
+        }
+
+        @Override
+        public Map<String, BigInteger> getBalances(List<String> addresses) {
+            Map<String, BigInteger> none = Collections.emptyMap();
+            return read(none, (service) -> service.getBalances(addresses));
         }
 
         @Override
         public List<HistoryItem> getHistory(String address, long height) {
-            for (Service service : services) {
-                List<HistoryItem> history = service.getHistory(address, height);
-                if (history != null) return history;
+            return read(null, (service) -> service.getHistory(address, height));
+        }
+
+        @Override
+        public Map<String, List<HistoryItem>> getHistories(List<String> addresses, long height) {
+            Map<String, List<HistoryItem>> none = Collections.emptyMap();
+            return read(none, (service) -> service.getHistories(addresses, height));
+        }
+
+        @Override
+        public HistoryPage getHistoryPage(String address, String cursor) {
+            return read(null, (service) -> service.getHistoryPage(address, cursor));
+        }
+
+        @Override
+        public Map<String, Long> getTransactionStatus(List<String> txids) {
+            Map<String, Long> none = Collections.emptyMap();
+            return read(none, (service) -> service.getTransactionStatus(txids));
+        }
+
+        // as with streamHistory, only a backend that failed before delivering anything is replaced
+        @Override
+        public Snapshot getSnapshot(String address, long height, Lambda<HistoryItem, Boolean> sink) {
+            schedule();
+            Snapshot snapshot = new Snapshot();
+            for (int index : order()) {
+                int[] delivered = { 0 };
+                long start = System.currentTimeMillis();
+                snapshot = services[index].getSnapshot(address, height, (HistoryItem item) -> {
+                    delivered[0]++;
+                    return sink.apply(item);
+                });
+                record(index, System.currentTimeMillis() - start, snapshot.complete());
+                if (snapshot.complete() || delivered[0] > 0) return snapshot;
             }
-            return null;
+            return snapshot;
         }
 
+        // delivered items cannot be taken back, so only a backend that delivered nothing is replaced
         @Override
-        public List<UTXO> getUTXOs(String address) {
-            for (Service service : services) {
-                List<UTXO> utxos = service.getUTXOs(address);
-                if (utxos != null) return utxos;
+        public boolean streamHistory(String address, long height, Lambda<HistoryItem, Boolean> sink) {
+            schedule();
+            for (int index : order()) {
+                int[] delivered = { 0 };
+                long start = System.currentTimeMillis();
+                boolean success = services[index].streamHistory(address, height, (HistoryItem item) -> {
+                    delivered[0]++;
+                    return sink.apply(item);
+                });
+                record(index, System.currentTimeMillis() - start, success);
+                if (success || delivered[0] > 0) return success;
             }
-            return null;
+            return false;
+        }
+
+        @Override
+        public List<UTXO> getUTXOs(String address) {
+            return read(null, (service) -> service.getUTXOs(address));
         }
 
         @Override
         public long getSequence(String address) {
-            for (Service service : services) {
-                long sequence = service.getSequence(address);
-                if (sequence != -1) return sequence;
-            }
-            return -1;
+            return read(-1L, (service) -> service.getSequence(address));
         }
 
         @Override
         public String broadcast(String transaction) {
-            for (Service service : services) {
-                String id = service.broadcast(transaction);
+            for (int index : order()) {
+                String id = services[index].broadcast(transaction);
                 if (id != null) return id;
             }
             return null;
         }
 
+        @Override
+        public EventSource subscribe(List<String> addresses, Subscriber subscriber) {
+            for (int index : order()) {
+                EventSource source = services[index].subscribe(addresses, subscriber);
+                if (source != null) return source;
+            }
+            return null;
+        }
+
+        @Override
+        public void invalidate(String address) {
+            for (Service service : services) {
+                service.invalidate(address);
+            }
+        }
+
         @Override
         public Object custom(String name, Object arg) {
             for (Service service : services) {
@@ -110,4 +513,274 @@ public interface Service {
 
     }
 
+    public static class SingleFlight implements Service {
+
+        private static final Map<String, FutureTask<?>> flights = new HashMap<>();
+        private static final AtomicLong collapsed = new AtomicLong();
+
+        public static long getCollapsed() {
+            return collapsed.get();
+        }
+
+        private final String key;
+        private final Service service;
+
+        public SingleFlight(String key, Service service) {
+            this.key = key;
+            this.service = service;
+        }
+
+        private <T> T call(String name, T failure, Callable<T> callable) {
+            String key = this.key + ":" + name;
+            FutureTask<T> task;
+            boolean leader = false;
+            synchronized (flights) {
+                task = (FutureTask<T>) flights.get(key);
+                if (task == null) {
+                    task = new FutureTask<>(callable);
+                    flights.put(key, task);
+                    leader = true;
+                }
+            }
+            if (leader) {
+                try {
+                    task.run();
+                } finally {
+                    synchronized (flights) {
+                        flights.remove(key);
+                    }
+                }
+            } else {
+                // the leader fetches on its own thread, a follower would park the ui until it finishes
+                if (Network.isMainThread()) throw new IllegalStateException("Collapsed call from the main thread, use the async API");
+                collapsed.incrementAndGet();
+            }
+            try {
+                return task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return failure;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new IllegalStateException(cause);
+            }
+        }
+
+        @Override
+        public long getHeight() {
+            return call("height", -1L, service::getHeight);
+        }
+
+        @Override
+        public BigInteger getFeeEstimate() {
+            return call("fee", null, service::getFeeEstimate);
+        }
+
+        @Override
+        public BigInteger getBalance(String address) {
+            return call("balance:" + address, null, () -> service.getBalance(address));
+        }
+
+        @Override
+        public Map<String, BigInteger> getBalances(List<String> addresses) {
+            return call("balances:" + addresses, Collections.<String, BigInteger>emptyMap(), () -> service.getBalances(addresses));
+        }
+
+        @Override
+        public List<HistoryItem> getHistory(String address, long height) {
+            return call("history:" + address + ":" + height, null, () -> service.getHistory(address, height));
+        }
+
+        @Override
+        public Map<String, List<HistoryItem>> getHistories(List<String> addresses, long height) {
+            return call("histories:" + addresses + ":" + height, Collections.<String, List<HistoryItem>>emptyMap(), () -> service.getHistories(addresses, height));
+        }
+
+        @Override
+        public HistoryPage getHistoryPage(String address, String cursor) {
+            return call("page:" + address + ":" + cursor, null, () -> service.getHistoryPage(address, cursor));
+        }
+
+        @Override
+        public Snapshot getSnapshot(String address, long height, Lambda<HistoryItem, Boolean> sink) {
+            return service.getSnapshot(address, height, sink);
+        }
+
+        @Override
+        public Map<String, Long> getTransactionStatus(List<String> txids) {
+            return call("status:" + txids, Collections.<String, Long>emptyMap(), () -> service.getTransactionStatus(txids));
+        }
+
+        @Override
+        public boolean streamHistory(String address, long height, Lambda<HistoryItem, Boolean> sink) {
+            return service.streamHistory(address, height, sink);
+        }
+
+        @Override
+        public List<UTXO> getUTXOs(String address) {
+            return call("utxos:" + address, null, () -> service.getUTXOs(address));
+        }
+
+        @Override
+        public long getSequence(String address) {
+            return call("sequence:" + address, -1L, () -> service.getSequence(address));
+        }
+
+        @Override
+        public String broadcast(String transaction) {
+            return service.broadcast(transaction);
+        }
+
+        @Override
+        public long probe() {
+            return service.probe();
+        }
+
+        @Override
+        public EventSource subscribe(List<String> addresses, Subscriber subscriber) {
+            return service.subscribe(addresses, subscriber);
+        }
+
+        @Override
+        public void invalidate(String address) {
+            service.invalidate(address);
+        }
+
+        @Override
+        public Object custom(String name, Object arg) {
+            return service.custom(name, arg);
+        }
+
+    }
+
+    // server-sent events on GET url?address=..: "block" carries the height, "address" the active address
+    public static class Push implements Service {
+
+        private final Service service;
+        private volatile String url;
+
+        public Push(Service service, String url) {
+            this.service = service;
+            this.url = url;
+        }
+
+        public void setUrl(String url) {
+            this.url = url;
+        }
+
+        @Override
+        public EventSource subscribe(List<String> addresses, Subscriber subscriber) {
+            String url = this.url;
+            if (url == null) return service.subscribe(addresses, subscriber);
+            StringBuilder sb = new StringBuilder(url);
+            for (int i = 0; i < addresses.size(); i++) {
+                sb.append(i == 0 && url.indexOf('?') == -1 ? '?' : '&').append("address=").append(addresses.get(i));
+            }
+            return new EventSource(sb.toString(), new EventSource.Listener() {
+                @Override
+                public void onEvent(String event, String data) {
+                    switch (event) {
+                        case "block":
+                            try {
+                                subscriber.onBlock(Long.parseLong(data.trim()));
+                            } catch (NumberFormatException e) {
+                                // malformed, the next block will do
+                            }
+                            break;
+                        case "address":
+                            subscriber.onActivity(data.trim());
+                            break;
+                    }
+                }
+
+                @Override
+                public void onConnected(boolean connected) {
+                    subscriber.onConnected(connected);
+                }
+            }).start();
+        }
+
+        @Override
+        public void invalidate(String address) {
+            service.invalidate(address);
+        }
+
+        @Override
+        public long getHeight() {
+            return service.getHeight();
+        }
+
+        @Override
+        public BigInteger getFeeEstimate() {
+            return service.getFeeEstimate();
+        }
+
+        @Override
+        public BigInteger getBalance(String address) {
+            return service.getBalance(address);
+        }
+
+        @Override
+        public Map<String, BigInteger> getBalances(List<String> addresses) {
+            return service.getBalances(addresses);
+        }
+
+        @Override
+        public List<HistoryItem> getHistory(String address, long height) {
+            return service.getHistory(address, height);
+        }
+
+        @Override
+        public Map<String, List<HistoryItem>> getHistories(List<String> addresses, long height) {
+            return service.getHistories(addresses, height);
+        }
+
+        @Override
+        public HistoryPage getHistoryPage(String address, String cursor) {
+            return service.getHistoryPage(address, cursor);
+        }
+
+        @Override
+        public Snapshot getSnapshot(String address, long height, Lambda<HistoryItem, Boolean> sink) {
+            return service.getSnapshot(address, height, sink);
+        }
+
+        @Override
+        public Map<String, Long> getTransactionStatus(List<String> txids) {
+            return service.getTransactionStatus(txids);
+        }
+
+        @Override
+        public boolean streamHistory(String address, long height, Lambda<HistoryItem, Boolean> sink) {
+            return service.streamHistory(address, height, sink);
+        }
+
+        @Override
+        public List<UTXO> getUTXOs(String address) {
+            return service.getUTXOs(address);
+        }
+
+        @Override
+        public long getSequence(String address) {
+            return service.getSequence(address);
+        }
+
+        @Override
+        public String broadcast(String transaction) {
+            return service.broadcast(transaction);
+        }
+
+        @Override
+        public long probe() {
+            return service.probe();
+        }
+
+        @Override
+        public Object custom(String name, Object arg) {
+            return service.custom(name, arg);
+        }
+
+    }
+
 }
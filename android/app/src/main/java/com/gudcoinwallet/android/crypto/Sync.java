@@ -1,5 +1,9 @@
 package com.gudcoinwallet.android.crypto;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
 import com.raugfer.crypto.binint;
 import com.raugfer.crypto.coins;
 import com.raugfer.crypto.dict;
@@ -9,7 +13,10 @@ import com.raugfer.crypto.mnemonic;
 import com.raugfer.crypto.pair;
 import com.raugfer.crypto.service;
 import com.raugfer.crypto.wallet;
+import com.gudcoinwallet.android.EventSource;
 import com.gudcoinwallet.android.Lambda;
+import com.gudcoinwallet.android.MainApplication;
+import com.gudcoinwallet.android.Network;
 import com.gudcoinwallet.android.db.AppDao;
 import com.gudcoinwallet.android.db.Chain;
 import com.gudcoinwallet.android.db.Multiwallet;
@@ -27,15 +34,30 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class Sync {
 
     private static int INTERVAL = 5;
+    private static int PREFETCH = 2;
+    private static int PUSH_TTL_BLOCKS = 10;
+    private static final String TAG = "Sync";
 
     private final ExecutorService exec;
     private final AppDao dao;
     private final boolean testnet;
+    private final Set<String> backfills = new HashSet<>();
+    private final Map<Integer, Integer> quietPolls = new HashMap<>();
+    private final Map<String, Subscription> subscriptions = new HashMap<>();
+    private final Set<String> pushed = new HashSet<>();
+    private final Map<String, long[]> tips = new HashMap<>();
+    private final Map<String, int[]> pendingPolls = new HashMap<>();
+    private final Map<String, Set<String>> unregistered = new HashMap<>();
+
+    private static final Handler main = new Handler(Looper.getMainLooper());
 
     public Sync(ExecutorService exec, AppDao dao, boolean testnet) {
         this.exec = exec;
@@ -73,13 +95,161 @@ public class Sync {
     }
 
     public void sync(Multiwallet multiwallet, Runnable cont) {
-        BackgroundTask.run(exec, () -> sync(multiwallet), (Boolean success) -> cont.run());
+        BackgroundTask.run(exec, () -> sync(multiwallet), (Boolean success) -> {
+            cont.run();
+            exec.execute(() -> subscribe(multiwallet, cont));
+            backfill(multiwallet, () -> {});
+        });
+    }
+
+    private static String key(String coin, int account) {
+        return coin + ":" + account;
+    }
+
+    // keeps a push channel open for the multiwallet addresses; events invalidate state and trigger a sync,
+    // the stream thread only hands them over to the executor
+    private void subscribe(Multiwallet multiwallet, Runnable cont) {
+        String key = key(multiwallet.coin, multiwallet.account);
+        List<String> addresses = new ArrayList<>();
+        for (Wallet wallet : dao.findWallets(multiwallet.coin, multiwallet.account)) addresses.add(wallet.address);
+        synchronized (subscriptions) {
+            Subscription subscription = subscriptions.get(key);
+            if (subscription != null && subscription.addresses.equals(addresses)) return;
+            if (subscription != null) subscription.source.close();
+            Coin coin = multiwallet.getCoin();
+            EventSource source = coin.getService(testnet).subscribe(addresses, new Service.Subscriber() {
+                @Override
+                public void onBlock(long height) {
+                    exec.execute(() -> {
+                        Chain chain = dao.findChain(multiwallet.coin);
+                        if (chain.getHeight() >= height) return;
+                        synchronized (tips) {
+                            long[] tip = tips.get(chain.getCoin().getChainKey());
+                            if (tip != null && tip[0] < height) tips.remove(chain.getCoin().getChainKey());
+                        }
+                        coin.getService(testnet).invalidate(null);
+                        chain.heiTime = 0;
+                        if (chain.getCoin().getFixedFee() == null) chain.feeTime = 0;
+                        dao.saveChain(chain);
+                        main.post(() -> sync(multiwallet, cont));
+                    });
+                }
+
+                @Override
+                public void onActivity(String address) {
+                    exec.execute(() -> {
+                        Wallet wallet = dao.findWallet(multiwallet.coin, address);
+                        if (wallet == null) return;
+                        coin.getService(testnet).invalidate(address);
+                        wallet.balTime = 0;
+                        wallet.txnTime = 0;
+                        wallet.unsTime = 0;
+                        wallet.seqTime = 0;
+                        dao.saveWallet(wallet);
+                        synchronized (quietPolls) {
+                            quietPolls.remove(wallet.id());
+                        }
+                        main.post(() -> sync(multiwallet, cont));
+                    });
+                }
+
+                @Override
+                public void onConnected(boolean connected) {
+                    synchronized (pushed) {
+                        if (connected) pushed.add(key); else pushed.remove(key);
+                    }
+                    // catch up on whatever happened while the channel was down
+                    if (connected) main.post(() -> sync(multiwallet, cont));
+                }
+            });
+            if (source == null) {
+                subscriptions.remove(key);
+                return;
+            }
+            subscriptions.put(key, new Subscription(source, addresses));
+        }
+    }
+
+    public void unsubscribe() {
+        synchronized (subscriptions) {
+            for (Subscription subscription : subscriptions.values()) subscription.source.close();
+            subscriptions.clear();
+        }
+        synchronized (pushed) {
+            pushed.clear();
+        }
+    }
+
+    private static final class Subscription {
+        final EventSource source;
+        final List<String> addresses;
+        Subscription(EventSource source, List<String> addresses) {
+            this.source = source;
+            this.addresses = addresses;
+        }
+    }
+
+    // how long synced state is trusted, much longer while a push channel would report changes;
+    // activity only comes through the account's own subscription
+    private int ttl(Wallet wallet) {
+        Coin coin = wallet.getCoin();
+        synchronized (pushed) {
+            if (pushed.contains(key(wallet.coin, wallet.account))) return coin.getBlockTime() * PUSH_TTL_BLOCKS;
+        }
+        return coin.getBlockTime() / 4;
+    }
+
+    // blocks come through any subscription of the coin
+    private int ttl(Chain chain) {
+        Coin coin = chain.getCoin();
+        synchronized (pushed) {
+            for (String key : pushed) {
+                if (key.startsWith(chain.coin + ":")) return coin.getBlockTime() * PUSH_TTL_BLOCKS;
+            }
+        }
+        return coin.getBlockTime() / 4;
+    }
+
+    // pages through older history in the background, resuming from the stored cursors
+    public void backfill(Multiwallet multiwallet, Runnable cont) {
+        String key = key(multiwallet.coin, multiwallet.account);
+        synchronized (backfills) {
+            if (!backfills.add(key)) return;
+        }
+        BackgroundTask.run(exec, () -> backfill(multiwallet), (Boolean success) -> {
+            synchronized (backfills) {
+                backfills.remove(key);
+            }
+            cont.run();
+        });
     }
 
     public void sync(Wallet wallet, Runnable cont) {
         BackgroundTask.run(exec, () -> sync(wallet), (Boolean success) -> cont.run());
     }
 
+    public void estimateFee(Multiwallet multiwallet, BigInteger amount, BigInteger[] result, Runnable cont) {
+        BackgroundTask.run(exec, () -> {
+            try {
+                result[0] = estimateFee(multiwallet, amount);
+            } catch (Exception e) {
+                result[0] = null;
+            }
+            return true;
+        }, (Boolean success) -> cont.run(), false);
+    }
+
+    public void createTransaction(Multiwallet multiwallet, String address, BigInteger amount, BigInteger fee, Object[][] result, Runnable cont) {
+        BackgroundTask.run(exec, () -> {
+            try {
+                result[0] = createTransaction(multiwallet, address, amount, fee);
+            } catch (Exception e) {
+                result[0] = null;
+            }
+            return true;
+        }, (Boolean success) -> cont.run(), false);
+    }
+
     public void broadcastTransaction(Multiwallet multiwallet, Object[] txn, boolean[] success, Runnable cont) {
         BackgroundTask.run(exec, () -> broadcastTransaction(multiwallet, txn, success), (Boolean _success) -> cont.run());
     }
@@ -149,7 +319,7 @@ public class Sync {
         return dao.findTransactions(wallet.coin, wallet.address, offset, limit);
     }
 
-    public BigInteger estimateFee(Multiwallet multiwallet, BigInteger amount) {
+    private BigInteger estimateFee(Multiwallet multiwallet, BigInteger amount) {
         Coin coin = multiwallet.getCoin();
         String label = coin.getLabel();
         // TODO should find only addresses with UTXOs
@@ -162,7 +332,7 @@ public class Sync {
         return service.estimate_fee(source_addresses, amount, label, testnet, cb());
     }
 
-    public Object[] createTransaction(Multiwallet multiwallet, String address, BigInteger amount, BigInteger fee) {
+    private Object[] createTransaction(Multiwallet multiwallet, String address, BigInteger amount, BigInteger fee) {
         Coin coin = multiwallet.getCoin();
         String label = coin.getLabel();
         // TODO should find only addresses with UTXOs
@@ -419,9 +589,20 @@ public class Sync {
         Chain chain = dao.findChain(multiwallet.coin);
         long height = chain.getHeight();
         int txnCount = multiwallet.txnCount;
+        // on account chains the per address phases wait for a new block or an event
+        if (multiwallet.getCoin().getMode() == Coin.AddressMode.ACCOUNT) {
+            success = syncHeight(chain);
+            boolean mined = syncPending(chain);
+            if (success && height != 0 && height == chain.getHeight() && !mined && settled(multiwallet)) {
+                return syncFee(chain);
+            }
+        } else {
+            syncPending(chain);
+        }
         for (;;) {
             int count = multiwallet.txnCount;
             BigInteger balance = multiwallet.getBalance();
+            success = syncSnapshot(multiwallet) && success;
             success = syncBalance(multiwallet) && success;
             success = syncSequence(multiwallet) && success;
             success = syncUTXOs(multiwallet) && success;
@@ -439,15 +620,27 @@ public class Sync {
         return success;
     }
 
+    // synced at least once, not invalidated by an event and with nothing pending
+    private boolean settled(Multiwallet multiwallet) {
+        for (Wallet wallet : dao.findWallets(multiwallet.coin, multiwallet.account)) {
+            if (wallet.balTime == 0 || wallet.txnTime == 0) return false;
+        }
+        return dao.findPendingTransactions(multiwallet.coin).isEmpty();
+    }
+
     private boolean sync(Wallet wallet) {
         boolean success = true;
         Chain chain = dao.findChain(wallet.coin);
         long height = chain.getHeight();
         int txnCount = wallet.txnCount;
-        success = syncBalance(wallet) && success;
-        success = syncSequence(wallet) && success;
-        success = syncUTXOs(wallet) && success;
-        success = syncHistory(wallet) && success;
+        if (due(wallet)) {
+            success = syncSnapshot(wallet) && success;
+        } else {
+            success = syncBalance(wallet) && success;
+            success = syncSequence(wallet) && success;
+            success = syncUTXOs(wallet) && success;
+            success = syncHistory(wallet) && success;
+        }
         success = syncHeight(chain) && success;
         success = syncFee(chain) && success;
         if (txnCount != wallet.txnCount || height != chain.getHeight()) {
@@ -462,24 +655,101 @@ public class Sync {
         long height = chain.getHeight();
         success = syncHeight(chain) && success;
         success = syncFee(chain) && success;
-        if (height != chain.getHeight()) {
+        boolean mined = syncPending(chain);
+        if (height != chain.getHeight() || mined) {
             triggerConfirmations(chain);
         }
         return success;
     }
 
+    private boolean backfill(Multiwallet multiwallet) {
+        boolean success = true;
+        int txnCount = multiwallet.txnCount;
+        for (Wallet wallet : dao.findWallets(multiwallet.coin, multiwallet.account)) {
+            success = backfill(wallet) && success;
+        }
+        multiwallet.txnCount = dao.transactionCount(multiwallet.coin, multiwallet.address);
+        if (txnCount != multiwallet.txnCount) {
+            dao.saveMultiwallet(multiwallet);
+            triggerConfirmations(dao.findChain(multiwallet.coin));
+        }
+        return success;
+    }
+
+    // the next page is fetched while the current one is being stored, at most PREFETCH pages ahead
+    private boolean backfill(Wallet wallet) {
+        if (wallet.bflDone) return true;
+        Service service = wallet.getCoin().getService(testnet);
+        Service.HistoryPage failed = new Service.HistoryPage();
+        BlockingQueue<Service.HistoryPage> pages = new ArrayBlockingQueue<>(PREFETCH);
+        Future<?> fetcher = Network.fork(() -> {
+            String cursor = wallet.bflCursor;
+            try {
+                for (;;) {
+                    Service.HistoryPage page = service.getHistoryPage(wallet.address, cursor);
+                    pages.put(page == null ? failed : page);
+                    if (page == null || page.cursor == null) break;
+                    cursor = page.cursor;
+                }
+            } catch (InterruptedException e) {
+                // abandoned by the consumer
+            }
+            return null;
+        }, 0);
+        try {
+            for (;;) {
+                Service.HistoryPage page = pages.take();
+                if (page == failed) return false;
+                saveHistory(wallet, page.items);
+                wallet.bflCursor = page.cursor;
+                wallet.bflDone = page.cursor == null;
+                dao.saveBackfill(wallet.id(), wallet.txnCount, wallet.bflCursor, wallet.bflDone);
+                if (wallet.bflDone) return true;
+                if (MainApplication.app().shuttingDown()) return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            fetcher.cancel(true);
+        }
+    }
+
+    // a lone active wallet with every phase due, as on account chains, takes one snapshot
+    private boolean syncSnapshot(Multiwallet multiwallet) {
+        Wallet depositWallet1 = findDepositWallet(multiwallet, false);
+        Wallet depositWallet2 = findDepositWallet(multiwallet, true);
+        List<Wallet> active = new ArrayList<>();
+        for (Wallet wallet : dao.findWallets(multiwallet.coin, multiwallet.account)) {
+            if (wallet.address.equals(depositWallet1.address) || wallet.address.equals(depositWallet2.address) || dao.pendingTransactionCount(wallet.coin, wallet.address) > 0) {
+                active.add(wallet);
+            }
+        }
+        if (active.size() != 1 || !due(active.get(0))) return true;
+        return syncSnapshot(active.get(0));
+    }
+
     private boolean syncBalance(Multiwallet multiwallet) {
-        // TODO figure out a better approach
+        Coin coin = multiwallet.getCoin();
+
         boolean success = true;
+        int time = time();
         Wallet depositWallet1 = findDepositWallet(multiwallet, false);
         Wallet depositWallet2 = findDepositWallet(multiwallet, true);
         List<Wallet> wallets = dao.findWallets(multiwallet.coin, multiwallet.account);
-        Collections.sort(wallets, (Wallet wallet1, Wallet wallet2) -> wallet1.balTime - wallet2.balTime);
-        BigInteger balance = BigInteger.ZERO;
+        List<Wallet> stale = new ArrayList<>();
         for (Wallet wallet : wallets) {
-            if (wallet.address.equals(depositWallet1.address) || wallet.address.equals(depositWallet2.address) || dao.pendingTransactionCount(wallet.coin, wallet.address) > 0) {
-                success = syncBalance(wallet) && success;
+            if (!wallet.address.equals(depositWallet1.address) && !wallet.address.equals(depositWallet2.address) && dao.pendingTransactionCount(wallet.coin, wallet.address) == 0) continue;
+            if (wallet.balTime + ttl(wallet) > time) continue;
+            if (wallet.balLastSync + INTERVAL > time) {
+                success = false;
+                continue;
             }
+            stale.add(wallet);
+        }
+        success = syncBalances(coin, stale) && success;
+        BigInteger balance = BigInteger.ZERO;
+        for (Wallet wallet : wallets) {
             balance = balance.add(wallet.getBalance());
         }
         multiwallet.setBalance(balance);
@@ -488,19 +758,54 @@ public class Sync {
     }
 
     private boolean syncHistory(Multiwallet multiwallet) {
-        // TODO figure out a better approach
+        Coin coin = multiwallet.getCoin();
+
         boolean success = true;
+        int time = time();
         Wallet depositWallet1 = findDepositWallet(multiwallet, false);
         Wallet depositWallet2 = findDepositWallet(multiwallet, true);
         List<Wallet> wallets = dao.findWallets(multiwallet.coin, multiwallet.account);
-        Collections.sort(wallets, (Wallet wallet1, Wallet wallet2) -> wallet1.txnTime - wallet2.txnTime);
+        List<Wallet> stale = new ArrayList<>();
+        long height = Long.MAX_VALUE;
         for (Wallet wallet : wallets) {
-            if (wallet.address.equals(depositWallet1.address) || wallet.address.equals(depositWallet2.address) || dao.pendingTransactionCount(wallet.coin, wallet.address) > 0) {
-                success = syncHistory(wallet) && success;
+            if (!wallet.address.equals(depositWallet1.address) && !wallet.address.equals(depositWallet2.address) && dao.pendingTransactionCount(wallet.coin, wallet.address) == 0) continue;
+            if (txnTime(wallet) + ttl(wallet) > time) continue;
+            if (wallet.txnLastSync + INTERVAL > time) {
+                success = false;
+                continue;
             }
+            stale.add(wallet);
+            height = Math.min(height, dao.transactionHeight(wallet.coin, wallet.address));
+        }
+        if (stale.size() == 1) {
+            // a single address, as on account chains, is streamed rather than batched
+            success = syncHistory(stale.get(0)) && success;
+        } else if (!stale.isEmpty()) {
+            Service service = coin.getService(testnet);
+            List<String> addresses = new ArrayList<>();
+            for (Wallet wallet : stale) addresses.add(wallet.address);
+            Map<String, List<Service.HistoryItem>> histories = service.getHistories(addresses, height);
+            time = time();
+            for (Wallet wallet : stale) {
+                List<Service.HistoryItem> items = histories.get(wallet.address);
+                if (items != null && !saveHistory(wallet, items)) {
+                    quietPoll(wallet, time);
+                    continue;
+                }
+                if (items != null) {
+                    wallet.txnTime = time;
+                } else {
+                    success = false;
+                }
+                wallet.txnLastSync = time;
+                dao.saveWallet(wallet);
+            }
+        }
+        int txnCount = dao.transactionCount(multiwallet.coin, multiwallet.address);
+        if (txnCount != multiwallet.txnCount) {
+            multiwallet.txnCount = txnCount;
+            dao.saveMultiwallet(multiwallet);
         }
-        multiwallet.txnCount = dao.transactionCount(multiwallet.coin, multiwallet.address);
-        dao.saveMultiwallet(multiwallet);
         return success;
     }
 
@@ -537,10 +842,21 @@ public class Sync {
     private boolean syncHeight(Chain chain) {
         Coin coin = chain.getCoin();
         Service service = coin.getService(testnet);
-        int blockTime = coin.getBlockTime();
 
         int time = time();
-        if (chain.heiTime + blockTime/4 > time) return true;
+        if (chain.heiTime + ttl(chain) > time) return true;
+        // a tip fetched for another coin on the same nodes is reused as is
+        long[] tip;
+        synchronized (tips) {
+            tip = tips.get(coin.getChainKey());
+        }
+        if (tip != null && tip[1] + ttl(chain) > time) {
+            if (chain.getHeight() == tip[0] && chain.heiTime == tip[1]) return true;
+            chain.setHeight(tip[0]);
+            chain.heiTime = (int) tip[1];
+            dao.saveChain(chain);
+            return true;
+        }
         if (chain.heiLastSync + INTERVAL > time) return false;
         long height = service.getHeight();
         time = time();
@@ -549,19 +865,76 @@ public class Sync {
         if (success) {
             chain.setHeight(height);
             chain.heiTime = time;
+            synchronized (tips) {
+                tips.put(coin.getChainKey(), new long[]{ height, time });
+            }
         }
         chain.heiLastSync = time;
         dao.saveChain(chain);
         return success;
     }
 
+    // unmined transactions are polled by id with backoff, returns whether any got mined
+    private boolean syncPending(Chain chain) {
+        Coin coin = chain.getCoin();
+        Service service = coin.getService(testnet);
+
+        Map<String, List<Transaction>> pending = new HashMap<>();
+        for (Transaction transaction : dao.findPendingTransactions(chain.coin)) {
+            if (transaction.getBlock() != Long.MAX_VALUE) continue;
+            List<Transaction> list = pending.get(transaction.hash);
+            if (list == null) pending.put(transaction.hash, list = new ArrayList<>());
+            list.add(transaction);
+        }
+        int base = Math.max(INTERVAL, coin.getBlockTime() / 4);
+        int time = time();
+        int[] poll;
+        synchronized (pendingPolls) {
+            if (pending.isEmpty()) {
+                pendingPolls.remove(chain.coin);
+                return false;
+            }
+            poll = pendingPolls.get(chain.coin);
+            if (poll != null && poll[2] == pending.size() && poll[0] > time) return false;
+        }
+        int interval = poll != null && poll[2] == pending.size() ? poll[1] : base;
+        Map<String, Long> status = service.getTransactionStatus(new ArrayList<>(pending.keySet()));
+        time = time();
+        boolean mined = false;
+
+        for (Map.Entry<String, Long> entry : status.entrySet()) {
+            long block = entry.getValue();
+            List<Transaction> transactions = pending.get(entry.getKey());
+            if (block == Long.MAX_VALUE || transactions == null) continue;
+            for (Transaction transaction : transactions) {
+                transaction.setBlock(block);
+                dao.saveTransaction(transaction);
+            }
+            mined = true;
+        }
+        if (mined) triggerConfirmations(chain);
+        synchronized (pendingPolls) {
+            pendingPolls.put(chain.coin, new int[]{ time + interval, mined ? base : Math.min(coin.getBlockTime(), interval * 2), pending.size() });
+        }
+        return mined;
+    }
+
     private boolean syncFee(Chain chain) {
         Coin coin = chain.getCoin();
         Service service = coin.getService(testnet);
-        int blockTime = coin.getBlockTime();
 
         int time = time();
-        if (chain.feeTime + blockTime/4 > time) return true;
+        // a constant fee is stored once and never fetched
+        BigInteger fixed = coin.getFixedFee();
+        if (fixed != null) {
+            if (chain.feeTime != 0 && fixed.equals(chain.getFee())) return true;
+            chain.setFee(fixed);
+            chain.feeTime = time;
+            chain.feeLastSync = time;
+            dao.saveChain(chain);
+            return true;
+        }
+        if (chain.feeTime + ttl(chain) > time) return true;
         if (chain.feeLastSync + INTERVAL > time) return false;
         BigInteger fee = service.getFeeEstimate();
         time = time();
@@ -579,10 +952,9 @@ public class Sync {
     private boolean syncBalance(Wallet wallet) {
         Coin coin = wallet.getCoin();
         Service service = coin.getService(testnet);
-        int blockTime = coin.getBlockTime();
 
         int time = time();
-        if (wallet.balTime + blockTime/4 > time) return true;
+        if (wallet.balTime + ttl(wallet) > time) return true;
         if (wallet.balLastSync + INTERVAL > time) return false;
         BigInteger balance = service.getBalance(wallet.address);
         time = time();
@@ -597,47 +969,67 @@ public class Sync {
         return success;
     }
 
+    private boolean syncBalances(Coin coin, List<Wallet> wallets) {
+        if (wallets.isEmpty()) return true;
+        Service service = coin.getService(testnet);
+
+        List<String> addresses = new ArrayList<>();
+        for (Wallet wallet : wallets) addresses.add(wallet.address);
+        Map<String, BigInteger> balances = service.getBalances(addresses);
+        int time = time();
+        boolean success = true;
+
+        for (Wallet wallet : wallets) {
+            BigInteger balance = balances.get(wallet.address);
+            if (balance != null) {
+                wallet.setBalance(balance);
+                wallet.balTime = time;
+            } else {
+                success = false;
+            }
+            wallet.balLastSync = time;
+            dao.saveWallet(wallet);
+            if (balance != null) checkUnregistered(service, wallet);
+        }
+        return success;
+    }
+
+    // assets an address holds that no registered coin covers, from the portfolio just cached; logged when they change
+    private void checkUnregistered(Service service, Wallet wallet) {
+        Object assets = service.custom("unregistered", wallet.address);
+        if (!(assets instanceof Set)) return;
+        synchronized (unregistered) {
+            if (assets.equals(unregistered.get(wallet.address))) return;
+            unregistered.put(wallet.address, (Set<String>) assets);
+        }
+        if (!((Set<?>) assets).isEmpty()) Log.i(TAG, "Unregistered assets held by " + wallet.address + ": " + assets);
+    }
+
     private boolean syncHistory(Wallet wallet) {
         Coin coin = wallet.getCoin();
         Service service = coin.getService(testnet);
-        int blockTime = coin.getBlockTime();
 
         int time = time();
-        if (wallet.txnTime + blockTime/4 > time) return true;
+        if (txnTime(wallet) + ttl(wallet) > time) return true;
         if (wallet.txnLastSync + INTERVAL > time()) return false;
         long height = dao.transactionHeight(wallet.coin, wallet.address);
-        List<Service.HistoryItem> items = service.getHistory(wallet.address, height);
+        boolean success;
+        boolean[] changed = { false };
+        if (height > 0) {
+            success = service.streamHistory(wallet.address, height, historySink(wallet, height, changed));
+            if (changed[0]) wallet.txnCount = dao.transactionCount(wallet.coin, wallet.address);
+        } else {
+            List<Service.HistoryItem> items = service.getHistory(wallet.address, height);
+            success = items != null;
+            if (success) changed[0] = saveHistory(wallet, items);
+        }
         time = time();
-        boolean success = items != null;
 
+        if (success && !changed[0]) {
+            quietPoll(wallet, time);
+            return true;
+        }
         if (success) {
-            Multiwallet multiwallet = dao.findMultiwallet(wallet.coin, wallet.account);
-            for (Service.HistoryItem item : items) {
-                boolean newrecord = false;
-                Transaction transaction = dao.findTransaction(wallet.coin, wallet.address, item.hash);
-                if (transaction == null) {
-                    transaction = new Transaction(wallet.coin, wallet.address, item.hash, item.amount, item.fee);
-                    dao.createTransaction(transaction);
-                    transaction = dao.findTransaction(wallet.coin, wallet.address, item.hash);
-                    newrecord = true;
-                }
-                transaction.setBlock(item.block);
-                transaction.setTime(item.time);
-                dao.saveTransaction(transaction);
-                transaction = dao.findTransaction(multiwallet.coin, multiwallet.address, item.hash);
-                if (transaction == null) {
-                    transaction = new Transaction(multiwallet.coin, multiwallet.address, item.hash, BigInteger.ZERO, item.fee);
-                    dao.createTransaction(transaction);
-                    transaction = dao.findTransaction(multiwallet.coin, multiwallet.address, item.hash);
-                }
-                if (newrecord) {
-                    transaction = transaction.incrementAmount(item.amount);
-                }
-                transaction.setBlock(item.block);
-                transaction.setTime(item.time);
-                dao.saveTransaction(transaction);
-            }
-            wallet.txnCount = dao.transactionCount(wallet.coin, wallet.address);
             wallet.txnTime = time;
         }
         wallet.txnLastSync = time;
@@ -645,25 +1037,139 @@ public class Sync {
         return success;
     }
 
+    // stores items while the response decodes and stops at the first known confirmed transaction
+    private Lambda<Service.HistoryItem, Boolean> historySink(Wallet wallet, long height, boolean[] changed) {
+        return (Service.HistoryItem item) -> {
+            if (saveHistory(wallet, item)) {
+                changed[0] = true;
+            } else if (height > 0 && item.block <= height) {
+                return false;
+            }
+            return true;
+        };
+    }
+
+    // history polls that found nothing new stay in memory, sparing a database write
+    private int txnTime(Wallet wallet) {
+        synchronized (quietPolls) {
+            Integer time = quietPolls.get(wallet.id());
+            return time == null ? wallet.txnTime : Math.max(time, wallet.txnTime);
+        }
+    }
+
+    private void quietPoll(Wallet wallet, int time) {
+        synchronized (quietPolls) {
+            quietPolls.put(wallet.id(), time);
+        }
+    }
+
+    private boolean saveHistory(Wallet wallet, List<Service.HistoryItem> items) {
+        boolean changed = false;
+        for (Service.HistoryItem item : items) {
+            if (saveHistory(wallet, item)) changed = true;
+        }
+        if (changed) wallet.txnCount = dao.transactionCount(wallet.coin, wallet.address);
+        return changed;
+    }
+
+    // writes only transactions that are new or whose block or time moved, returns whether anything was written
+    private boolean saveHistory(Wallet wallet, Service.HistoryItem item) {
+        Transaction transaction = dao.findTransaction(wallet.coin, wallet.address, item.hash);
+        boolean newrecord = transaction == null;
+        if (!newrecord && transaction.getBlock() == item.block && transaction.getTime() == item.time) return false;
+        Multiwallet multiwallet = dao.findMultiwallet(wallet.coin, wallet.account);
+        if (newrecord) {
+            transaction = new Transaction(wallet.coin, wallet.address, item.hash, item.amount, item.fee);
+            dao.createTransaction(transaction);
+            transaction = dao.findTransaction(wallet.coin, wallet.address, item.hash);
+        }
+        transaction.setBlock(item.block);
+        transaction.setTime(item.time);
+        dao.saveTransaction(transaction);
+        transaction = dao.findTransaction(multiwallet.coin, multiwallet.address, item.hash);
+        if (transaction == null) {
+            transaction = new Transaction(multiwallet.coin, multiwallet.address, item.hash, BigInteger.ZERO, item.fee);
+            dao.createTransaction(transaction);
+            transaction = dao.findTransaction(multiwallet.coin, multiwallet.address, item.hash);
+        }
+        if (newrecord) {
+            transaction = transaction.incrementAmount(item.amount);
+        }
+        transaction.setBlock(item.block);
+        transaction.setTime(item.time);
+        dao.saveTransaction(transaction);
+        return true;
+    }
+
+    // every per-address value is stale and none is backing off, so a snapshot replaces the four calls
+    private boolean due(Wallet wallet) {
+        int ttl = ttl(wallet);
+        int time = time();
+        return wallet.balTime + ttl <= time && wallet.balLastSync + INTERVAL <= time
+                && wallet.seqTime + ttl <= time && wallet.seqLastSync + INTERVAL <= time
+                && wallet.unsTime + ttl <= time && wallet.unsLastSync + INTERVAL <= time
+                && txnTime(wallet) + ttl <= time && wallet.txnLastSync + INTERVAL <= time;
+    }
+
+    private boolean syncSnapshot(Wallet wallet) {
+        Coin coin = wallet.getCoin();
+        Service service = coin.getService(testnet);
+
+        long height = dao.transactionHeight(wallet.coin, wallet.address);
+        boolean[] changed = { false };
+        Service.Snapshot snapshot = service.getSnapshot(wallet.address, height, historySink(wallet, height, changed));
+        if (changed[0]) wallet.txnCount = dao.transactionCount(wallet.coin, wallet.address);
+        int time = time();
+
+        if (snapshot.balance != null) {
+            wallet.setBalance(snapshot.balance);
+            wallet.balTime = time;
+        }
+        wallet.balLastSync = time;
+        if (snapshot.sequence != -1) {
+            wallet.sequence = snapshot.sequence;
+            wallet.seqTime = time;
+        }
+        wallet.seqLastSync = time;
+        if (snapshot.utxos != null) {
+            saveUTXOs(wallet, snapshot.utxos);
+            wallet.unsTime = time;
+        }
+        wallet.unsLastSync = time;
+        if (snapshot.history) {
+            if (changed[0]) {
+                wallet.txnTime = time;
+            } else {
+                quietPoll(wallet, time);
+            }
+        }
+        wallet.txnLastSync = time;
+        dao.saveWallet(wallet);
+        return snapshot.complete();
+    }
+
+    private void saveUTXOs(Wallet wallet, List<Service.UTXO> utxos) {
+        List<Unspent> unspents = new ArrayList<>();
+        for (Service.UTXO utxo : utxos) {
+            unspents.add(new Unspent(wallet.coin, wallet.address, utxo.hash, utxo.index, utxo.amount));
+        }
+        dao.deleteUnspents(wallet.coin, wallet.address);
+        dao.insertUnspents(unspents);
+    }
+
     private boolean syncUTXOs(Wallet wallet) {
         Coin coin = wallet.getCoin();
         Service service = coin.getService(testnet);
-        int blockTime = coin.getBlockTime();
 
         int time = time();
-        if (wallet.unsTime + blockTime/4 > time) return true;
+        if (wallet.unsTime + ttl(wallet) > time) return true;
         if (wallet.unsLastSync + INTERVAL > time) return false;
         List<Service.UTXO> utxos = service.getUTXOs(wallet.address);
         time = time();
         boolean success = utxos != null;
 
         if (success) {
-            List<Unspent> unspents = new ArrayList<>();
-            for (Service.UTXO utxo : utxos) {
-                unspents.add(new Unspent(wallet.coin, wallet.address, utxo.hash, utxo.index, utxo.amount));
-            }
-            dao.deleteUnspents(wallet.coin, wallet.address);
-            dao.insertUnspents(unspents);
+            saveUTXOs(wallet, utxos);
             wallet.unsTime = time;
         }
         wallet.unsLastSync = time;
@@ -674,10 +1180,9 @@ public class Sync {
     private boolean syncSequence(Wallet wallet) {
         Coin coin = wallet.getCoin();
         Service service = coin.getService(testnet);
-        int blockTime = coin.getBlockTime();
 
         int time = time();
-        if (wallet.seqTime + blockTime/4 > time) return true;
+        if (wallet.seqTime + ttl(wallet) > time) return true;
         if (wallet.seqLastSync + INTERVAL > time) return false;
         long sequence = service.getSequence(wallet.address);
         time = time();
@@ -1,17 +1,30 @@
 package com.gudcoinwallet.android.crypto;
 
+import android.util.JsonReader;
+
+import com.gudcoinwallet.android.Lambda;
 import com.gudcoinwallet.android.Network;
 import com.raugfer.crypto.base58;
 import com.raugfer.crypto.binint;
 import com.raugfer.crypto.dict;
 import com.raugfer.crypto.transaction;
 
-import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 public class WavesnodesAPI implements Service {
 
@@ -19,16 +32,22 @@ public class WavesnodesAPI implements Service {
     private final String assetId;
     private final boolean testnet;
     private final long fee;
+    private final int ttl;
+
+    private static final int BATCH = 100;
+    private static final int PAGE = 100;
+    private static final int TIP_PAGE = 10;
 
-    public WavesnodesAPI(String baseUrl, boolean testnet, long fee) {
-        this(baseUrl, null, testnet, fee);
+    public WavesnodesAPI(String baseUrl, boolean testnet, long fee, int blockTime) {
+        this(baseUrl, null, testnet, fee, blockTime);
     }
 
-    public WavesnodesAPI(String baseUrl, String assetId, boolean testnet, long fee) {
+    public WavesnodesAPI(String baseUrl, String assetId, boolean testnet, long fee, int blockTime) {
         this.baseUrl = baseUrl;
         this.assetId = assetId;
         this.testnet = testnet;
         this.fee = fee;
+        this.ttl = blockTime / 4;
     }
 
     private static boolean assetEquals(String asset1, String asset2) {
@@ -39,13 +58,40 @@ public class WavesnodesAPI implements Service {
     public long getHeight() {
         try {
             String url = baseUrl + "blocks/height";
-            JSONObject data = new JSONObject(Network.urlFetch(url));
+            JSONObject data = new JSONObject(Network.urlFetchCached(url, ttl));
+            return data.getLong("height");
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public long probe() {
+        try {
+            JSONObject data = new JSONObject(Network.urlFetch(baseUrl + "blocks/height"));
             return data.getLong("height");
         } catch (Exception e) {
             return -1;
         }
     }
 
+    // the cached responses are keyed by node, so this covers waves and every token on it
+    @Override
+    public void invalidate(String address) {
+        if (address == null) {
+            Network.getCache().remove(baseUrl + "blocks/height");
+            return;
+        }
+        Network.getCache().remove(baseUrl + "addresses/balance/details/" + address);
+        Network.getCache().remove(baseUrl + "assets/balance/" + address);
+        String prefix = baseUrl + "transactions/address/" + address + "/";
+        synchronized (pages) {
+            for (Iterator<String> i = pages.keySet().iterator(); i.hasNext(); ) {
+                if (i.next().startsWith(prefix)) i.remove();
+            }
+        }
+    }
+
     @Override
     public BigInteger getFeeEstimate() {
         return BigInteger.valueOf(fee);
@@ -56,78 +102,415 @@ public class WavesnodesAPI implements Service {
         try {
             if (assetId == null) {
                 String url = baseUrl + "addresses/balance/details/" + address;
-                JSONObject data = new JSONObject(Network.urlFetch(url));
+                JSONObject data = new JSONObject(Network.urlFetchCached(url, ttl));
                 long available = data.getLong("available");
                 return BigInteger.valueOf(available);
             } else {
-                String url = baseUrl + "assets/balance/" + address + "/" + assetId;
-                JSONObject data = new JSONObject(Network.urlFetch(url));
-                long balance = data.getLong("balance");
-                return BigInteger.valueOf(balance);
+                Map<String, BigInteger> portfolio = getPortfolio(address);
+                if (portfolio == null) return null;
+                BigInteger balance = portfolio.get(assetId);
+                return balance == null ? BigInteger.ZERO : balance;
             }
         } catch (Exception e) {
             return null;
         }
     }
 
-    @Override
-    public List<HistoryItem> getHistory(String address, long height) {
+    // every asset the address holds in one call, cached so that all tokens on it share the request
+    private Map<String, BigInteger> getPortfolio(String address) {
         try {
-            String url = baseUrl + "transactions/address/" + address + "/limit/100";
-            JSONArray data = new JSONArray(Network.urlFetch(url));
-            JSONArray items = data.getJSONArray(0);
-            List<HistoryItem> list = new ArrayList<>();
-            for (int i = 0; i < items.length(); i++) {
-                JSONObject item = items.getJSONObject(i);
-                String asset = item.isNull("assetId") ? null : item.getString("assetId");
-                String fee_asset = item.isNull("feeAssetId") ? null : item.getString("feeAssetId");
-                if (assetEquals(asset, assetId) || assetEquals(fee_asset, assetId)) {
-                    String hash = item.getString("id");
-                    long block = item.optLong("height", Long.MAX_VALUE);
-                    if (block == -1) block = Long.MAX_VALUE;
-                    int time = (int)(item.optLong("timestamp", 0) / 1000);
-                    BigInteger amount = BigInteger.ZERO;
-                    BigInteger fee = BigInteger.ZERO;
-                    String source = item.getString("sender");
-                    if (assetEquals(asset, assetId)) {
-                        if (item.has("recipient")) {
-                            String target = item.getString("recipient");
-                            BigInteger value = BigInteger.valueOf(item.getLong("amount"));
-                            if (address.equals(target)) amount = amount.add(value);
-                            if (address.equals(source)) amount = amount.subtract(value);
-                        }
-                        if (item.has("transfers")) {
-                            JSONArray transfers = item.getJSONArray("transfers");
-                            for (int j = 0; j < transfers.length(); j++) {
-                                JSONObject transfer = transfers.getJSONObject(j);
-                                String target = transfer.getString("recipient");
-                                BigInteger value = BigInteger.valueOf(transfer.getLong("amount"));
-                                if (address.equals(target)) amount = amount.add(value);
+            String url = baseUrl + "assets/balance/" + address;
+            return Network.urlStreamCached(url, ttl, (Reader in) -> {
+                JsonReader reader = new JsonReader(in);
+                Map<String, BigInteger> portfolio = new HashMap<>();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (!reader.nextName().equals("balances") || !Json.beginArray(reader)) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    while (reader.hasNext()) {
+                        String asset = null;
+                        long balance = -1;
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            switch (reader.nextName()) {
+                                case "assetId": asset = Json.nextString(reader); break;
+                                case "balance": balance = Json.nextLong(reader, -1); break;
+                                default: reader.skipValue();
                             }
-                            BigInteger value = BigInteger.valueOf(item.getLong("totalAmount"));
-                            if (address.equals(source)) amount = amount.subtract(value);
                         }
+                        reader.endObject();
+                        if (asset != null && balance != -1) portfolio.put(asset, BigInteger.valueOf(balance));
                     }
-                    if (assetEquals(fee_asset, assetId)) {
-                        BigInteger fee_value = BigInteger.valueOf(item.getLong("fee"));
-                        fee = fee.add(fee_value);
-                        if (address.equals(source)) amount = amount.subtract(fee_value);
-                    }
-                    HistoryItem o = new HistoryItem();
-                    o.hash = hash;
-                    o.time = time;
-                    o.block = block;
-                    o.amount = amount;
-                    o.fee = fee;
-                    list.add(o);
+                    reader.endArray();
                 }
+                reader.endObject();
+                return portfolio;
+            });
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    // held assets that no registered token covers, null on failure
+    private Set<String> getUnregistered(String address) {
+        Map<String, BigInteger> portfolio = getPortfolio(address);
+        if (portfolio == null) return null;
+        Set<String> assets = new TreeSet<>(portfolio.keySet());
+        assets.removeAll(Coins.getAssetIds(testnet));
+        return assets;
+    }
+
+    // with a known tip pages go down to it, starting small; without one a single page is fetched
+    @Override
+    public List<HistoryItem> getHistory(String address, long height) {
+        if (height <= 0) {
+            HistoryPage page = fetchHistoryPage(address, null, tipLimit(address, 0), 0, null);
+            return page == null ? null : page.items;
+        }
+        List<HistoryItem> list = new ArrayList<>();
+        return streamHistory(address, height, list::add) ? list : null;
+    }
+
+    @Override
+    public HistoryPage getHistoryPage(String address, String cursor) {
+        return fetchHistoryPage(address, cursor, PAGE, 0, null);
+    }
+
+    @Override
+    public boolean streamHistory(String address, long height, Lambda<HistoryItem, Boolean> sink) {
+        String cursor = null;
+        int limit = tipLimit(address, height);
+        do {
+            HistoryPage page = fetchHistoryPage(address, cursor, limit, height, sink);
+            if (page == null) return false;
+            cursor = page.cursor;
+            limit = PAGE;
+        } while (cursor != null);
+        return true;
+    }
+
+    // the newest confirmed block each asset has per node and address; the first page is sized by the
+    // lowest so that waves and every token on the node ask for the same one and filter their own items
+    private static final Map<String, Map<String, Long>> tips = new HashMap<>();
+
+    private int tipLimit(String address, long tip) {
+        String key = baseUrl + address;
+        long lowest = tip;
+        synchronized (tips) {
+            Map<String, Long> assets = tips.get(key);
+            if (assets == null) {
+                assets = new HashMap<>();
+                tips.put(key, assets);
             }
-            return list;
+            assets.put(assetId, tip);
+            for (long t : assets.values()) lowest = Math.min(lowest, t);
+        }
+        return lowest > 0 ? TIP_PAGE : PAGE;
+    }
+
+    // items go to the sink if any, to the page otherwise; no cursor once the tip is passed or the sink stops
+    private HistoryPage fetchHistoryPage(String address, String cursor, int limit, long tip, Lambda<HistoryItem, Boolean> sink) {
+        try {
+            HistoryPage page = new HistoryPage();
+            page.items = new ArrayList<>();
+            boolean[] stopped = { false };
+            Page shared = fetchPage(address, cursor, limit, (Transaction t) -> {
+                // older than the newest confirmed transaction we have, the rest is known
+                if (t.block < tip) {
+                    stopped[0] = true;
+                    return false;
+                }
+                HistoryItem o = item(t, address);
+                if (o == null) return true;
+                if (sink == null) {
+                    page.items.add(o);
+                } else if (!sink.apply(o)) {
+                    stopped[0] = true;
+                    return false;
+                }
+                return true;
+            });
+            if (stopped[0]) return page;
+            // paged by the id of the last transaction, whether or not it concerns this asset
+            int count = shared.transactions.size();
+            page.cursor = count < limit ? null : shared.transactions.get(count - 1).hash;
+            return page;
         } catch (Exception e) {
             return null;
         }
     }
 
+    interface Consumer {
+        boolean accept(Transaction t) throws IOException;
+    }
+
+    // a transaction as the node reports it, before it is narrowed down to one asset
+    static class Transaction {
+        String hash;
+        long block = Long.MAX_VALUE;
+        long timestamp = 0;
+        String source;
+        String target;
+        String asset;
+        String feeAsset;
+        Long value;
+        Long totalValue;
+        Long feeValue;
+        boolean hasRecipient = false;
+        boolean hasTransfers = false;
+        BigInteger received = BigInteger.ZERO;
+    }
+
+    static class Page {
+        final List<Transaction> transactions = new ArrayList<>();
+        long expires;
+    }
+
+    // decoded pages shared by waves and every token served from the same node
+    private static final Map<String, FutureTask<Page>> pages = new HashMap<>();
+
+    private static boolean fresh(FutureTask<Page> task) {
+        if (!task.isDone()) return true;
+        try {
+            return task.get().expires > System.currentTimeMillis();
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    // the leader gets its transactions as the page is decoded, followers once the shared page is complete
+    private Page fetchPage(String address, String cursor, int limit, Consumer consumer) throws IOException {
+        String url = baseUrl + "transactions/address/" + address + "/limit/" + limit + (cursor == null ? "" : "?after=" + cursor);
+        Feed feed = new Feed(consumer);
+        FutureTask<Page> task;
+        boolean leader = false;
+        synchronized (pages) {
+            task = pages.get(url);
+            if (task == null || !fresh(task)) {
+                for (Iterator<FutureTask<Page>> i = pages.values().iterator(); i.hasNext(); ) {
+                    if (!fresh(i.next())) i.remove();
+                }
+                task = new FutureTask<>(() -> loadPage(url, address, feed));
+                pages.put(url, task);
+                leader = true;
+            }
+        }
+        Page page;
+        if (leader) task.run();
+        try {
+            page = task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            // the leader may have been cancelled by its own hedge, so followers try for themselves
+            if (!leader) {
+                page = loadPage(url, address, feed);
+                feed.check();
+                return page;
+            }
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException(cause);
+        }
+        if (leader) {
+            feed.check();
+        } else {
+            for (Transaction t : page.transactions) {
+                if (!consumer.accept(t)) break;
+            }
+        }
+        return page;
+    }
+
+    // a consumer that has stopped or failed hears no more, the page is still decoded to the end for the others
+    private static final class Feed implements Consumer {
+        private Consumer consumer;
+        private IOException error = null;
+
+        Feed(Consumer consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public boolean accept(Transaction t) {
+            if (consumer == null) return true;
+            try {
+                if (!consumer.accept(t)) consumer = null;
+            } catch (IOException e) {
+                error = e;
+                consumer = null;
+            }
+            return true;
+        }
+
+        void check() throws IOException {
+            if (error != null) throw error;
+        }
+    }
+
+    private Page loadPage(String url, String address, Feed feed) throws IOException {
+        Page page = load(url, address, feed);
+        page.expires = System.currentTimeMillis() + ttl*1000L;
+        return page;
+    }
+
+    // the network side, overridden in tests
+    Page load(String url, String address, Consumer consumer) throws IOException {
+        return Network.urlStream(url, (Reader in) -> decodePage(new JsonReader(in), address, consumer));
+    }
+
+    static Page decodePage(JsonReader reader, String address) throws IOException {
+        return decodePage(reader, address, null);
+    }
+
+    static Page decodePage(JsonReader reader, String address, Consumer consumer) throws IOException {
+        Page page = new Page();
+        reader.beginArray();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Transaction t = decodeTransaction(reader, address);
+            page.transactions.add(t);
+            if (consumer != null) consumer.accept(t);
+        }
+        reader.endArray();
+        reader.endArray();
+        return page;
+    }
+
+    private static Transaction decodeTransaction(JsonReader reader, String address) throws IOException {
+        Transaction t = new Transaction();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id": t.hash = Json.nextString(reader); break;
+                case "height": t.block = Json.nextLong(reader, Long.MAX_VALUE); break;
+                case "timestamp": t.timestamp = Json.nextLong(reader, 0); break;
+                case "sender": t.source = Json.nextString(reader); break;
+                case "assetId": t.asset = Json.nextString(reader); break;
+                case "feeAssetId": t.feeAsset = Json.nextString(reader); break;
+                case "amount": t.value = Json.nextLong(reader, 0); break;
+                case "totalAmount": t.totalValue = Json.nextLong(reader, 0); break;
+                case "fee": t.feeValue = Json.nextLong(reader, 0); break;
+                case "recipient":
+                    t.hasRecipient = true;
+                    t.target = Json.nextString(reader);
+                    break;
+                case "transfers":
+                    t.hasTransfers = true;
+                    if (!Json.beginArray(reader)) break;
+                    while (reader.hasNext()) {
+                        String transferTarget = null;
+                        long transferValue = 0;
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            switch (reader.nextName()) {
+                                case "recipient": transferTarget = Json.nextString(reader); break;
+                                case "amount": transferValue = Json.nextLong(reader, 0); break;
+                                default: reader.skipValue(); break;
+                            }
+                        }
+                        reader.endObject();
+                        if (address.equals(transferTarget)) t.received = t.received.add(BigInteger.valueOf(transferValue));
+                    }
+                    reader.endArray();
+                    break;
+                default: reader.skipValue(); break;
+            }
+        }
+        reader.endObject();
+        if (t.block == -1) t.block = Long.MAX_VALUE;
+        return t;
+    }
+
+    // the share of a transaction that concerns this asset, null if it does not concern it at all
+    HistoryItem item(Transaction t, String address) throws IOException {
+        if (!assetEquals(t.asset, assetId) && !assetEquals(t.feeAsset, assetId)) return null;
+        Json.require(t.hash, "id");
+        Json.require(t.source, "sender");
+        BigInteger amount = BigInteger.ZERO;
+        BigInteger fee = BigInteger.ZERO;
+        if (assetEquals(t.asset, assetId)) {
+            if (t.hasRecipient) {
+                BigInteger v = BigInteger.valueOf(Json.require(t.value, "amount"));
+                if (address.equals(t.target)) amount = amount.add(v);
+                if (address.equals(t.source)) amount = amount.subtract(v);
+            }
+            if (t.hasTransfers) {
+                amount = amount.add(t.received);
+                BigInteger v = BigInteger.valueOf(Json.require(t.totalValue, "totalAmount"));
+                if (address.equals(t.source)) amount = amount.subtract(v);
+            }
+        }
+        if (assetEquals(t.feeAsset, assetId)) {
+            BigInteger v = BigInteger.valueOf(Json.require(t.feeValue, "fee"));
+            fee = fee.add(v);
+            if (address.equals(t.source)) amount = amount.subtract(v);
+        }
+        HistoryItem o = new HistoryItem();
+        o.hash = t.hash;
+        o.time = (int) (t.timestamp / 1000);
+        o.block = t.block;
+        o.amount = amount;
+        o.fee = fee;
+        return o;
+    }
+
+    @Override
+    public Map<String, Long> getTransactionStatus(List<String> txids) {
+        Map<String, Long> status = new HashMap<>();
+        for (List<String> chunk : Service.chunks(txids, BATCH)) {
+            try {
+                StringBuilder url = new StringBuilder(baseUrl + "transactions/status");
+                for (int i = 0; i < chunk.size(); i++) {
+                    url.append(i == 0 ? '?' : '&').append("id=").append(chunk.get(i));
+                }
+                status.putAll(Network.urlStream(url.toString(), chunk.size(), (Reader in) -> {
+                    JsonReader reader = new JsonReader(in);
+                    Map<String, Long> batch = new HashMap<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        String id = null;
+                        String state = null;
+                        long height = -1;
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            switch (reader.nextName()) {
+                                case "id": id = Json.nextString(reader); break;
+                                case "status": state = Json.nextString(reader); break;
+                                case "height": height = Json.nextLong(reader, -1); break;
+                                default: reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                        if (id == null) continue;
+                        if ("confirmed".equals(state) && height != -1) batch.put(id, height);
+                        if ("unconfirmed".equals(state)) batch.put(id, Long.MAX_VALUE);
+                    }
+                    reader.endArray();
+                    return batch;
+                }));
+            } catch (Exception e) {
+                // left out, the caller asks again later
+            }
+        }
+        return status;
+    }
+
+    // utxos and sequence are constant here, so only balance and history go out, in parallel
+    @Override
+    public Snapshot getSnapshot(String address, long height, Lambda<HistoryItem, Boolean> sink) {
+        Future<BigInteger> balance = Network.fork(() -> getBalance(address), Network.getDeadline());
+        Snapshot snapshot = new Snapshot();
+        snapshot.utxos = getUTXOs(address);
+        snapshot.sequence = getSequence(address);
+        snapshot.history = height > 0 ? streamHistory(address, height, sink) : Service.feed(getHistory(address, 0), sink);
+        snapshot.balance = Service.join(balance, null);
+        return snapshot;
+    }
+
     @Override
     public List<UTXO> getUTXOs(String address) {
         return new ArrayList<>();
@@ -177,7 +560,11 @@ public class WavesnodesAPI implements Service {
 
     @Override
     public Object custom(String name, Object arg) {
-        return null;
+        switch (name) {
+            case "portfolio": return getPortfolio((String) arg);
+            case "unregistered": return getUnregistered((String) arg);
+            default: return null;
+        }
     }
 
 }
\ No newline at end of file
@@ -50,6 +50,10 @@ public interface AppDao {
     @Update
     void saveWallet(Wallet wallet);
 
+    // touches only the backfill columns so that it does not race with the regular sync
+    @Query("UPDATE `wallet` SET `txn_count` = :txnCount, `bfl_cursor` = :cursor, `bfl_done` = :done WHERE id = :id")
+    void saveBackfill(int id, int txnCount, String cursor, boolean done);
+
     @Query("SELECT * FROM `wallet` WHERE id = :id LIMIT 1")
     Wallet findWallet(int id);
 
@@ -1,13 +1,23 @@
 package com.gudcoinwallet.android.db;
 
+import android.arch.persistence.db.SupportSQLiteDatabase;
 import android.arch.persistence.room.Database;
 import android.arch.persistence.room.RoomDatabase;
 import android.arch.persistence.room.TypeConverters;
+import android.arch.persistence.room.migration.Migration;
 
-@Database(entities = {Chain.class, Multiwallet.class, Wallet.class, Transaction.class, Unspent.class}, version = 1, exportSchema = false)
+@Database(entities = {Chain.class, Multiwallet.class, Wallet.class, Transaction.class, Unspent.class}, version = 2, exportSchema = false)
 @TypeConverters({AppTypeConverters.class})
 public abstract class AppDatabase extends RoomDatabase {
 
     public abstract AppDao appDao();
 
+    public static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `wallet` ADD COLUMN `bfl_cursor` TEXT");
+            database.execSQL("ALTER TABLE `wallet` ADD COLUMN `bfl_done` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
 }
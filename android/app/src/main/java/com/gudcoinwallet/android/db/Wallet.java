@@ -74,6 +74,12 @@ public class Wallet {
     @ColumnInfo(name = "seq_last_sync") @NonNull
     public int seqLastSync = 0;
 
+    @ColumnInfo(name = "bfl_cursor")
+    public String bflCursor = null;
+
+    @ColumnInfo(name = "bfl_done") @NonNull
+    public boolean bflDone = false;
+
     public Wallet(String coin, String address, int account, boolean change, int index) {
         this.coin = coin;
         this.address = address;
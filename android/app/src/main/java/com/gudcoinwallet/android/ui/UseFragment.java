@@ -12,7 +12,6 @@ import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
 import android.support.annotation.ColorInt;
 import android.support.design.widget.Snackbar;
 import android.support.design.widget.TextInputLayout;
@@ -54,6 +53,8 @@ public class UseFragment extends Fragment {
 
     private Runnable cont;
 
+    private int feeSequence = 0;
+
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
         sync = MainApplication.app().getSync();
@@ -169,14 +170,15 @@ public class UseFragment extends Fragment {
                     amount = amount.replace(',', '.');
                     if (amount.charAt(amount.length()-1) == '.') amount += "0";
                     BigInteger amt = new BigDecimal(amount).multiply(BigDecimal.TEN.pow(coin.getDecimals())).toBigInteger();
-                    BigInteger fee;
-                    try {
-                        fee = sync.estimateFee(multiwallet, amt);
-                    } catch (Exception e) {
-                        fee = null;
-                    }
-                    feeView.setText(fee == null ? null : activity.formatAmount(coin.getFeeCoin(), fee));
+                    BigInteger[] fee = new BigInteger[1];
+                    int sequence = ++feeSequence;
+                    sync.estimateFee(multiwallet, amt, fee, () -> {
+                        // ignore estimates superseded by a later edit
+                        if (sequence != feeSequence) return;
+                        feeView.setText(fee[0] == null ? null : activity.formatAmount(coin.getFeeCoin(), fee[0]));
+                    });
                 } else {
+                    feeSequence++;
                     feeView.setText(null);
                 }
             }
@@ -210,71 +212,71 @@ public class UseFragment extends Fragment {
             amount = amount.replace(',', '.');
             if (amount.charAt(amount.length()-1) == '.') amount += "0";
             BigInteger amt = new BigDecimal(amount).multiply(BigDecimal.TEN.pow(coin.getDecimals())).toBigInteger();
-            BigInteger fee;
-            try {
-                fee = sync.estimateFee(multiwallet, amt); // TODO apply multiplication factor
-            } catch (Exception e) {
-                Snackbar.make(rootView, R.string.unsuccessful_transaction_creation, Snackbar.LENGTH_LONG).show();
-                return;
-            }
-            feeView.setText(activity.formatAmount(coin, fee));
-            getActivity().setRequestedOrientation(getResources().getConfiguration().orientation == Configuration.ORIENTATION_PORTRAIT ? ActivityInfo.SCREEN_ORIENTATION_PORTRAIT : ActivityInfo.SCREEN_ORIENTATION_LANDSCAPE);
-            ProgressDialog creatingDialog = ProgressDialog.show(getActivity(), "", getResources().getString(R.string.creating_transaction), true);
-            new Handler().postDelayed(() -> {
-                Object[] txn;
-                try {
-                    txn = sync.createTransaction(multiwallet, address, amt, fee);
-                } catch (Exception e) {
-                    creatingDialog.dismiss();
-                    getActivity().setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_UNSPECIFIED);
+            BigInteger[] fee = new BigInteger[1];
+            sync.estimateFee(multiwallet, amt, fee, () -> {
+                if (fee[0] == null) {
                     Snackbar.make(rootView, R.string.unsuccessful_transaction_creation, Snackbar.LENGTH_LONG).show();
                     return;
                 }
-                creatingDialog.dismiss();
-                getActivity().setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_UNSPECIFIED);
-                LayoutInflater li = LayoutInflater.from(getActivity());
-                View dialogView = li.inflate(R.layout.dialog_password, null);
-                AppCompatEditText passwordView = dialogView.findViewById(R.id.password);
-                new AlertDialog.Builder(getActivity())
-                        //.setTitle(R.string.action_send_payment)
-                        .setView(dialogView)
-                        .setMessage(R.string.action_send_payment_confirmation)
-                        .setNegativeButton(R.string.cancel, null)
-                        .setPositiveButton(R.string.ok, (DialogInterface dialog, int which) -> {
-                            String[] wordlist = getResources().getStringArray(R.array.mnemonic_english);
-                            String password = passwordView.getText().toString();
-                            getActivity().setRequestedOrientation(getResources().getConfiguration().orientation == Configuration.ORIENTATION_PORTRAIT ? ActivityInfo.SCREEN_ORIENTATION_PORTRAIT : ActivityInfo.SCREEN_ORIENTATION_LANDSCAPE);
-                            ProgressDialog signingDialog = ProgressDialog.show(getActivity(), "", getResources().getString(R.string.signing_transaction), true);
-                            MainApplication.app().authenticate(wordlist, password, coin, (secrets) -> {
-                                if (secrets != null) {
-                                    Object[] signedTxn = sync.signTransaction(multiwallet, txn, secrets);
-                                    signingDialog.dismiss();
-                                    ProgressDialog broadcastDialog = ProgressDialog.show(getActivity(), "", getResources().getString(R.string.broadcasting_transaction), true);
-                                    boolean[] success = { false };
-                                    sync.broadcastTransaction(multiwallet, signedTxn, success, () -> {
-                                        broadcastDialog.dismiss();
+                // TODO apply multiplication factor
+                feeView.setText(activity.formatAmount(coin, fee[0]));
+                getActivity().setRequestedOrientation(getResources().getConfiguration().orientation == Configuration.ORIENTATION_PORTRAIT ? ActivityInfo.SCREEN_ORIENTATION_PORTRAIT : ActivityInfo.SCREEN_ORIENTATION_LANDSCAPE);
+                ProgressDialog creatingDialog = ProgressDialog.show(getActivity(), "", getResources().getString(R.string.creating_transaction), true);
+                Object[][] created = new Object[1][];
+                sync.createTransaction(multiwallet, address, amt, fee[0], created, () -> {
+                    Object[] txn = created[0];
+                    if (txn == null) {
+                        creatingDialog.dismiss();
+                        getActivity().setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_UNSPECIFIED);
+                        Snackbar.make(rootView, R.string.unsuccessful_transaction_creation, Snackbar.LENGTH_LONG).show();
+                        return;
+                    }
+                    creatingDialog.dismiss();
+                    getActivity().setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_UNSPECIFIED);
+                    LayoutInflater li = LayoutInflater.from(getActivity());
+                    View dialogView = li.inflate(R.layout.dialog_password, null);
+                    AppCompatEditText passwordView = dialogView.findViewById(R.id.password);
+                    new AlertDialog.Builder(getActivity())
+                            //.setTitle(R.string.action_send_payment)
+                            .setView(dialogView)
+                            .setMessage(R.string.action_send_payment_confirmation)
+                            .setNegativeButton(R.string.cancel, null)
+                            .setPositiveButton(R.string.ok, (DialogInterface dialog, int which) -> {
+                                String[] wordlist = getResources().getStringArray(R.array.mnemonic_english);
+                                String password = passwordView.getText().toString();
+                                getActivity().setRequestedOrientation(getResources().getConfiguration().orientation == Configuration.ORIENTATION_PORTRAIT ? ActivityInfo.SCREEN_ORIENTATION_PORTRAIT : ActivityInfo.SCREEN_ORIENTATION_LANDSCAPE);
+                                ProgressDialog signingDialog = ProgressDialog.show(getActivity(), "", getResources().getString(R.string.signing_transaction), true);
+                                MainApplication.app().authenticate(wordlist, password, coin, (secrets) -> {
+                                    if (secrets != null) {
+                                        Object[] signedTxn = sync.signTransaction(multiwallet, txn, secrets);
+                                        signingDialog.dismiss();
+                                        ProgressDialog broadcastDialog = ProgressDialog.show(getActivity(), "", getResources().getString(R.string.broadcasting_transaction), true);
+                                        boolean[] success = { false };
+                                        sync.broadcastTransaction(multiwallet, signedTxn, success, () -> {
+                                            broadcastDialog.dismiss();
+                                            getActivity().setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_UNSPECIFIED);
+                                            if (success[0]) {
+                                                activity.refreshPending = true;
+                                                ViewPager viewPager = activity.findViewById(R.id.container);
+                                                viewPager.setCurrentItem(2);
+                                                Snackbar snackbar = Snackbar.make(rootView, R.string.successful_broadcast, Snackbar.LENGTH_INDEFINITE);
+                                                snackbar.setAction(R.string.dismiss, (View view) -> snackbar.dismiss()).show();
+                                            } else {
+                                                Snackbar snackbar = Snackbar.make(rootView, R.string.unsuccessful_broadcast, Snackbar.LENGTH_INDEFINITE);
+                                                snackbar.setAction(R.string.dismiss, (View view) -> snackbar.dismiss()).show();
+                                            }
+                                        });
+                                    } else {
+                                        signingDialog.dismiss();
                                         getActivity().setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_UNSPECIFIED);
-                                        if (success[0]) {
-                                            activity.refreshPending = true;
-                                            ViewPager viewPager = activity.findViewById(R.id.container);
-                                            viewPager.setCurrentItem(2);
-                                            Snackbar snackbar = Snackbar.make(rootView, R.string.successful_broadcast, Snackbar.LENGTH_INDEFINITE);
-                                            snackbar.setAction(R.string.dismiss, (View view) -> snackbar.dismiss()).show();
-                                        } else {
-                                            Snackbar snackbar = Snackbar.make(rootView, R.string.unsuccessful_broadcast, Snackbar.LENGTH_INDEFINITE);
-                                            snackbar.setAction(R.string.dismiss, (View view) -> snackbar.dismiss()).show();
-                                        }
-                                    });
-                                } else {
-                                    signingDialog.dismiss();
-                                    getActivity().setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_UNSPECIFIED);
-                                    Snackbar snackbar = Snackbar.make(rootView, R.string.password_mismatch, Snackbar.LENGTH_INDEFINITE);
-                                    snackbar.setAction(R.string.dismiss, (View view) -> snackbar.dismiss()).show();
-                                }
-                            }, handler);
-                        })
-                        .show();
-            }, 500);
+                                        Snackbar snackbar = Snackbar.make(rootView, R.string.password_mismatch, Snackbar.LENGTH_INDEFINITE);
+                                        snackbar.setAction(R.string.dismiss, (View view) -> snackbar.dismiss()).show();
+                                    }
+                                }, handler);
+                            })
+                            .show();
+                });
+            });
         });
 
         return rootView;
@@ -0,0 +1,74 @@
+package com.gudcoinwallet.android;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    private static final long COOLDOWN = 100;
+
+    private static CircuitBreaker open() {
+        CircuitBreaker breaker = new CircuitBreaker(3, COOLDOWN, 4*COOLDOWN);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.allow());
+            breaker.record(false);
+        }
+        return breaker;
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, COOLDOWN, 4*COOLDOWN);
+        breaker.record(false);
+        breaker.record(false);
+        breaker.record(true);
+        breaker.record(false);
+        breaker.record(false);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        breaker.record(false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.allow());
+        assertEquals(1, breaker.opened());
+        assertEquals(1, breaker.rejected());
+    }
+
+    @Test
+    public void singleProbeClosesOnSuccess() throws InterruptedException {
+        CircuitBreaker breaker = open();
+        Thread.sleep(COOLDOWN + 20);
+        assertTrue(breaker.allow());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertFalse(breaker.allow());
+        breaker.record(true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(1, breaker.closed());
+        assertTrue(breaker.allow());
+    }
+
+    @Test
+    public void failedProbeDoublesTheCooldown() throws InterruptedException {
+        CircuitBreaker breaker = open();
+        Thread.sleep(COOLDOWN + 20);
+        assertTrue(breaker.allow());
+        breaker.record(false);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        Thread.sleep(COOLDOWN + 20);
+        assertFalse(breaker.allow());
+        Thread.sleep(COOLDOWN);
+        assertTrue(breaker.allow());
+    }
+
+    @Test
+    public void cancelledProbeFreesTheSlot() throws InterruptedException {
+        CircuitBreaker breaker = open();
+        Thread.sleep(COOLDOWN + 20);
+        assertTrue(breaker.allow());
+        breaker.cancel();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertTrue(breaker.allow());
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.gudcoinwallet.android;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RateLimiterTest {
+
+    private static final long MINUTE = 60*1000;
+
+    @Test
+    public void unconfiguredHostIsUnlimited() {
+        RateLimiter limiter = new RateLimiter();
+        for (int i = 0; i < 100; i++) assertEquals(0, limiter.acquire("a"));
+    }
+
+    @Test
+    public void waitsOnceTheBucketIsEmpty() {
+        RateLimiter limiter = new RateLimiter();
+        limiter.configure("a", new RateLimiter.Quota(2, MINUTE));
+        assertEquals(0, limiter.acquire("a"));
+        assertEquals(0, limiter.acquire("a"));
+        long wait = limiter.acquire("a");
+        assertTrue("wait " + wait, wait > MINUTE / 2 - 1000 && wait <= MINUTE / 2);
+        assertEquals(0, limiter.acquire("b"));
+    }
+
+    @Test
+    public void tightestQuotaWins() {
+        RateLimiter limiter = new RateLimiter();
+        limiter.configure("a", new RateLimiter.Quota(5, 1000), new RateLimiter.Quota(2, MINUTE));
+        assertEquals(0, limiter.acquire("a"));
+        assertEquals(0, limiter.acquire("a"));
+        assertTrue(limiter.acquire("a") > 1000);
+    }
+
+    @Test
+    public void laterConfigurationReplaces() {
+        RateLimiter limiter = new RateLimiter();
+        limiter.configure("a", new RateLimiter.Quota(100, MINUTE));
+        limiter.configure("a", new RateLimiter.Quota(1, MINUTE));
+        assertEquals(0, limiter.acquire("a"));
+        assertTrue(limiter.acquire("a") > 0);
+    }
+
+    @Test
+    public void configureAfterAcquire() {
+        RateLimiter limiter = new RateLimiter();
+        assertEquals(0, limiter.acquire("a"));
+        limiter.configure("a", new RateLimiter.Quota(1, MINUTE));
+        assertEquals(0, limiter.acquire("a"));
+        assertTrue(limiter.acquire("a") > 0);
+    }
+
+    @Test
+    public void batchCostsPerItem() {
+        RateLimiter limiter = new RateLimiter();
+        limiter.configure("a", new RateLimiter.Quota(3, MINUTE));
+        assertEquals(0, limiter.acquire("a", 2));
+        long wait = limiter.acquire("a", 2);
+        assertTrue("wait " + wait, wait > MINUTE / 3 - 1000 && wait <= MINUTE / 3);
+        assertEquals(0, limiter.acquire("a"));
+        assertTrue(limiter.acquire("a") > 0);
+    }
+
+    @Test
+    public void costAboveCapacityWaitsForAFullBucket() {
+        RateLimiter limiter = new RateLimiter();
+        limiter.configure("a", new RateLimiter.Quota(3, MINUTE));
+        assertEquals(0, limiter.acquire("a"));
+        long wait = limiter.acquire("a", 5);
+        assertTrue("wait " + wait, wait > MINUTE / 3 - 1000 && wait <= MINUTE / 3);
+    }
+
+    @Test
+    public void backoffBlocksAndDrains() {
+        RateLimiter limiter = new RateLimiter();
+        limiter.configure("a", new RateLimiter.Quota(10, MINUTE));
+        limiter.backoff("a", 5000);
+        long wait = limiter.acquire("a");
+        assertTrue("wait " + wait, wait > 4000 && wait <= 5000);
+        limiter.backoff("a", 1000);
+        assertTrue(limiter.acquire("a") > 1000);
+    }
+
+}
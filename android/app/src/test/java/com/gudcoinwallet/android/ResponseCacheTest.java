@@ -0,0 +1,125 @@
+package com.gudcoinwallet.android;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseCacheTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("cache").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) for (File file : files) file.delete();
+        dir.delete();
+    }
+
+    private static ResponseCache.Entry entry(int size) {
+        return new ResponseCache.Entry(new byte[size], "\"etag\"", null, System.currentTimeMillis() + 60*1000);
+    }
+
+    private long usage() {
+        long total = 0;
+        for (File file : dir.listFiles()) total += file.length();
+        return total;
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        ResponseCache cache = new ResponseCache(10);
+        ResponseCache.Entry a = entry(4);
+        cache.put("a", a);
+        cache.put("b", entry(4));
+        assertSame(a, cache.get("a"));
+        cache.put("c", entry(4));
+        assertNull(cache.get("b"));
+        assertSame(a, cache.get("a"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    public void skipsOversizedEntries() {
+        ResponseCache cache = new ResponseCache(10);
+        cache.setDirectory(dir);
+        cache.put("a", entry(11));
+        assertNull(cache.get("a"));
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    @Test
+    public void reloadsFromDisk() {
+        ResponseCache cache = new ResponseCache(1024);
+        cache.setDirectory(dir);
+        ResponseCache.Entry entry = new ResponseCache.Entry(new byte[] { 1, 2, 3 }, "\"etag\"", "Mon, 01 Jan 2024 00:00:00 GMT", 42);
+        cache.put("a", entry);
+        ResponseCache other = new ResponseCache(1024);
+        other.setDirectory(dir);
+        ResponseCache.Entry loaded = other.get("a");
+        assertArrayEquals(entry.body, loaded.body);
+        assertEquals(entry.etag, loaded.etag);
+        assertEquals(entry.lastModified, loaded.lastModified);
+        assertEquals(42, loaded.expires);
+        assertNull(other.get("b"));
+    }
+
+    @Test
+    public void holdsTheDiskToTheLimit() {
+        ResponseCache cache = new ResponseCache(1024);
+        cache.setDirectory(dir);
+        for (int i = 0; i < 10; i++) cache.put("url" + i, entry(300));
+        assertTrue("disk " + usage(), usage() <= 1024);
+    }
+
+    @Test
+    public void removeDropsBothTiers() {
+        ResponseCache cache = new ResponseCache(1024);
+        cache.setDirectory(dir);
+        cache.put("a", entry(4));
+        cache.put("b", entry(4));
+        cache.remove("a");
+        assertNull(cache.get("a"));
+        assertEquals(1, dir.listFiles().length);
+        ResponseCache other = new ResponseCache(1024);
+        other.setDirectory(dir);
+        assertNull(other.get("a"));
+        assertNotNull(other.get("b"));
+        other.clear();
+        assertNull(other.get("b"));
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    @Test
+    public void dropsCorruptFiles() throws IOException {
+        ResponseCache cache = new ResponseCache(1024);
+        cache.setDirectory(dir);
+        cache.put("a", entry(4));
+        File file = dir.listFiles()[0];
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[] { 0, 1 });
+        out.close();
+        ResponseCache other = new ResponseCache(1024);
+        other.setDirectory(dir);
+        assertNull(other.get("a"));
+        assertFalse(file.exists());
+    }
+
+}
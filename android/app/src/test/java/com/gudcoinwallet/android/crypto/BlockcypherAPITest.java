@@ -0,0 +1,125 @@
+package com.gudcoinwallet.android.crypto;
+
+import android.util.JsonReader;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class BlockcypherAPITest {
+
+    private static JsonReader reader(String json) {
+        return new JsonReader(new StringReader(json.replace('\'', '"')));
+    }
+
+    @Test
+    public void decodesTxrefs() throws IOException {
+        Service.HistoryItem received = BlockcypherAPI.decodeHistoryItem(reader(
+                "{'tx_hash':'h1','block_height':100,'tx_input_n':-1,'tx_output_n':1,'value':1000," +
+                "'confirmed':'2024-01-01T00:00:00Z','double_spend':false,'extra':{'a':[1,2]}}"));
+        assertEquals("h1", received.hash);
+        assertEquals(100, received.block);
+        assertEquals(1704067200, received.time);
+        assertEquals(BigInteger.valueOf(1000), received.amount);
+
+        Service.HistoryItem spent = BlockcypherAPI.decodeHistoryItem(reader(
+                "{'tx_hash':'h2','block_height':-1,'tx_input_n':0,'tx_output_n':-1,'value':400}"));
+        assertEquals(Long.MAX_VALUE, spent.block);
+        assertEquals(BigInteger.valueOf(-400), spent.amount);
+    }
+
+    @Test
+    public void keepsUnspentOutputsOnly() throws IOException {
+        Service.UTXO utxo = BlockcypherAPI.decodeUTXO(reader("{'tx_hash':'h1','tx_output_n':2,'value':500,'spent':false}"));
+        assertEquals("h1", utxo.hash);
+        assertEquals(2, utxo.index);
+        assertEquals(BigInteger.valueOf(500), utxo.amount);
+        assertNull(BlockcypherAPI.decodeUTXO(reader("{'tx_hash':'h2','tx_output_n':0,'value':500,'spent':true}")));
+    }
+
+    @Test
+    public void decodesStatus() throws IOException {
+        Map<String, Long> status = new HashMap<>();
+        BlockcypherAPI.decodeStatus(reader("{'hash':'h1','block_height':100,'inputs':[]}"), status);
+        BlockcypherAPI.decodeStatus(reader("{'hash':'h2','block_height':-1}"), status);
+        assertEquals(Long.valueOf(100), status.get("h1"));
+        assertEquals(Long.valueOf(Long.MAX_VALUE), status.get("h2"));
+    }
+
+    // the transaction is listed under both owned addresses but attributed once to each
+    @Test
+    public void attributesBatchedHistory() throws IOException {
+        String tx = "{'hash':'t1','block_height':10,'fees':5,'confirmed':'2024-01-01T00:00:00Z'," +
+                "'inputs':[{'output_value':100,'addresses':['A']}]," +
+                "'outputs':[{'value':60,'addresses':['B']},{'value':35,'addresses':['C']}]}";
+        JsonReader reader = reader("[{'address':'A','txs':[" + tx + "]},{'address':'B','txs':[" + tx + "]},{'address':'D','txs':[]}]");
+        Set<String> owned = new HashSet<>(Arrays.asList("A", "B", "D"));
+        Set<String> seen = new HashSet<>();
+        Map<String, List<Service.HistoryItem>> histories = new HashMap<>();
+        reader.beginArray();
+        while (reader.hasNext()) BlockcypherAPI.decodeAddressHistory(reader, owned, seen, histories);
+        reader.endArray();
+        assertEquals(1, histories.get("A").size());
+        assertEquals(BigInteger.valueOf(-100), histories.get("A").get(0).amount);
+        assertEquals(1, histories.get("B").size());
+        assertEquals(BigInteger.valueOf(60), histories.get("B").get(0).amount);
+        assertEquals(BigInteger.valueOf(5), histories.get("B").get(0).fee);
+        assertEquals(0, histories.get("D").size());
+        assertNull(histories.get("C"));
+    }
+
+    private static Service.HistoryItem item(long block) {
+        Service.HistoryItem item = new Service.HistoryItem();
+        item.block = block;
+        return item;
+    }
+
+    @Test
+    public void pageCursorIsTheLowestConfirmedBlock() {
+        List<Service.HistoryItem> items = Arrays.asList(item(Long.MAX_VALUE), item(105), item(103));
+        assertEquals("103", BlockcypherAPI.page(items, true).cursor);
+        assertNull(BlockcypherAPI.page(items, false).cursor);
+        assertNull(BlockcypherAPI.page(Arrays.asList(item(Long.MAX_VALUE)), true).cursor);
+    }
+
+    @Test
+    public void beforeRefetchesAPartialBlock() {
+        assertEquals("104", BlockcypherAPI.next(null, "103"));
+        assertEquals("101", BlockcypherAPI.next("104", "100"));
+        assertNull(BlockcypherAPI.next("104", null));
+    }
+
+    // a block that alone filled the page would come back forever, so paging moves past it
+    @Test
+    public void beforeSkipsABlockThatFilledThePage() {
+        assertEquals("103", BlockcypherAPI.next("104", "103"));
+    }
+
+    @Test
+    public void rejectsUnexpectedAddresses() throws IOException {
+        try {
+            BlockcypherAPI.decodeAddressHistory(reader("{'address':'X','txs':[]}"), new HashSet<>(Arrays.asList("A")), new HashSet<>(), new HashMap<>());
+            fail();
+        } catch (IOException e) {
+            assertEquals("Unexpected address X", e.getMessage());
+        }
+    }
+
+}
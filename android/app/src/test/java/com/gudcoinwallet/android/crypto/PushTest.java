@@ -0,0 +1,129 @@
+package com.gudcoinwallet.android.crypto;
+
+import com.gudcoinwallet.android.EventSource;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class PushTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private HttpServer server;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final List<String> requests = new ArrayList<>();
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+    private volatile String thread;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/events", this::handle);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        done.countDown();
+        server.stop(0);
+    }
+
+    // the first connection ends after two events, the second one stays open
+    private void handle(HttpExchange exchange) throws IOException {
+        int count;
+        synchronized (requests) {
+            requests.add(exchange.getRequestURI().getRawQuery() + " " + exchange.getRequestHeaders().getFirst("Last-Event-ID"));
+            count = requests.size();
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        if (count == 1) {
+            out.write((": hello\n\nevent: block\ndata: 123\n\nid: 7\nevent: address\ndata: 3PAbc\n\nevent: block\ndata: x\n\n").getBytes(UTF8));
+            out.close();
+            return;
+        }
+        out.write("event: block\ndata: 124\n\n".getBytes(UTF8));
+        out.flush();
+        try {
+            done.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            // shutting down
+        }
+        out.close();
+    }
+
+    private Service.Subscriber subscriber() {
+        return new Service.Subscriber() {
+            @Override
+            public void onBlock(long height) {
+                events.add("block " + height);
+            }
+
+            @Override
+            public void onActivity(String address) {
+                events.add("address " + address);
+            }
+
+            @Override
+            public void onConnected(boolean connected) {
+                thread = Thread.currentThread().getName();
+                events.add("connected " + connected);
+            }
+        };
+    }
+
+    private String next() throws InterruptedException {
+        return events.poll(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void deliversEventsAndResumes() throws InterruptedException {
+        String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/events";
+        Service.Push push = new Service.Push(null, url);
+        EventSource source = push.subscribe(Arrays.asList("3PAbc", "3PDef"), subscriber());
+        try {
+            assertEquals("connected true", next());
+            assertEquals("block 123", next());
+            assertEquals("address 3PAbc", next());
+            assertEquals("connected false", next());
+            assertEquals("connected true", next());
+            assertEquals("block 124", next());
+        } finally {
+            source.close();
+        }
+        assertEquals("connected false", next());
+        assertEquals("EventSource", thread);
+        synchronized (requests) {
+            assertEquals(Arrays.asList("address=3PAbc&address=3PDef null", "address=3PAbc&address=3PDef 7"), requests);
+        }
+    }
+
+    @Test
+    public void fallsBackWithoutUrl() {
+        Service.Push push = new Service.Push(new StubService(), null);
+        assertNull(push.subscribe(Arrays.asList("3PAbc"), subscriber()));
+    }
+
+}
@@ -0,0 +1,148 @@
+package com.gudcoinwallet.android.crypto;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class SingleFlightTest {
+
+    // answers every address with its call count once released
+    private static class SlowService extends StubService {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+
+        private void block() {
+            calls.incrementAndGet();
+            entered.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public BigInteger getBalance(String address) {
+            block();
+            return BigInteger.valueOf(calls.get());
+        }
+
+        @Override
+        public Map<String, BigInteger> getBalances(List<String> addresses) {
+            block();
+            return super.getBalances(addresses);
+        }
+    }
+
+    private static void awaitCollapsed(long count) throws InterruptedException {
+        for (int i = 0; i < 500 && Service.SingleFlight.getCollapsed() < count; i++) Thread.sleep(10);
+        assertTrue(Service.SingleFlight.getCollapsed() >= count);
+    }
+
+    @Test
+    public void collapsesConcurrentCalls() throws Exception {
+        SlowService backend = new SlowService();
+        Service service = new Service.SingleFlight("collapse", backend);
+        ExecutorService exec = Executors.newCachedThreadPool();
+        try {
+            long collapsed = Service.SingleFlight.getCollapsed();
+            Future<BigInteger> leader = exec.submit(() -> service.getBalance("a"));
+            assertTrue(backend.entered.await(5, TimeUnit.SECONDS));
+            Future<BigInteger> follower = exec.submit(() -> service.getBalance("a"));
+            awaitCollapsed(collapsed + 1);
+            backend.release.countDown();
+            assertEquals(BigInteger.ONE, leader.get(5, TimeUnit.SECONDS));
+            assertEquals(BigInteger.ONE, follower.get(5, TimeUnit.SECONDS));
+            assertEquals(1, backend.calls.get());
+            assertEquals(BigInteger.valueOf(2), service.getBalance("a"));
+            assertEquals(BigInteger.valueOf(3), service.getBalance("b"));
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+
+    @Test
+    public void followerRefusesTheMainThread() throws Exception {
+        SlowService backend = new SlowService();
+        Service service = new Service.SingleFlight("main", backend);
+        ExecutorService exec = Executors.newCachedThreadPool();
+        try {
+            Future<BigInteger> leader = exec.submit(() -> service.getBalance("a"));
+            assertTrue(backend.entered.await(5, TimeUnit.SECONDS));
+            try {
+                service.getBalance("a");
+                fail();
+            } catch (IllegalStateException e) {
+                // must go through the async API
+            }
+            backend.release.countDown();
+            assertEquals(BigInteger.ONE, leader.get(5, TimeUnit.SECONDS));
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failuresReachEveryCaller() {
+        Service service = new Service.SingleFlight("failure", new StubService() {
+            @Override
+            public BigInteger getBalance(String address) {
+                throw new IllegalArgumentException(address);
+            }
+        });
+        try {
+            service.getBalance("a");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("a", e.getMessage());
+        }
+        assertNull(service.getHistory("a", 0));
+    }
+
+    @Test
+    public void interruptedFollowerGetsFailureValues() throws Exception {
+        SlowService backend = new SlowService();
+        Service service = new Service.SingleFlight("interrupt", backend);
+        ExecutorService exec = Executors.newCachedThreadPool();
+        try {
+            long collapsed = Service.SingleFlight.getCollapsed();
+            exec.submit(() -> service.getBalances(Arrays.asList("a")));
+            assertTrue(backend.entered.await(5, TimeUnit.SECONDS));
+            Object[] result = new Object[2];
+            Thread follower = new Thread(() -> {
+                result[0] = service.getBalances(Arrays.asList("a"));
+                result[1] = Thread.currentThread().isInterrupted();
+            });
+            follower.start();
+            awaitCollapsed(collapsed + 1);
+            follower.interrupt();
+            follower.join(5000);
+            assertEquals(0, ((Map<?, ?>) result[0]).size());
+            assertEquals(true, result[1]);
+        } finally {
+            backend.release.countDown();
+            exec.shutdownNow();
+        }
+    }
+
+}
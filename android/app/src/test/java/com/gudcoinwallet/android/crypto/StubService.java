@@ -0,0 +1,49 @@
+package com.gudcoinwallet.android.crypto;
+
+import java.math.BigInteger;
+import java.util.List;
+
+// a backend that fails every call, tests override what they need
+class StubService implements Service {
+
+    @Override
+    public long getHeight() {
+        return -1;
+    }
+
+    @Override
+    public BigInteger getFeeEstimate() {
+        return null;
+    }
+
+    @Override
+    public BigInteger getBalance(String address) {
+        return null;
+    }
+
+    @Override
+    public List<HistoryItem> getHistory(String address, long height) {
+        return null;
+    }
+
+    @Override
+    public List<UTXO> getUTXOs(String address) {
+        return null;
+    }
+
+    @Override
+    public long getSequence(String address) {
+        return -1;
+    }
+
+    @Override
+    public String broadcast(String transaction) {
+        return null;
+    }
+
+    @Override
+    public Object custom(String name, Object arg) {
+        return null;
+    }
+
+}
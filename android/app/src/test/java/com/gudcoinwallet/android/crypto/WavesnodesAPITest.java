@@ -0,0 +1,148 @@
+package com.gudcoinwallet.android.crypto;
+
+import android.util.JsonReader;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class WavesnodesAPITest {
+
+    private static final String ME = "3PMe";
+    private static final String OTHER = "3POther";
+    private static final String TOKEN = "Tok";
+
+    private static final String PAGE = ("[[" +
+            "{'id':'t1','type':4,'height':100,'timestamp':1700000000123,'sender':'3PMe','recipient':'3POther'," +
+            "'assetId':null,'feeAssetId':null,'amount':500,'fee':100,'proofs':['x'],'extra':{'a':[1,{'b':2}]}}," +
+            "{'id':'t2','height':-1,'timestamp':1700000001000,'sender':'3POther','recipient':'3PMe'," +
+            "'assetId':'Tok','feeAssetId':null,'amount':7,'fee':100}," +
+            "{'id':'t3','height':99,'timestamp':1700000002000,'sender':'3POther','assetId':null,'feeAssetId':null," +
+            "'transfers':[{'recipient':'3PMe','amount':30},{'recipient':'3PX','amount':20}],'totalAmount':50,'fee':200}" +
+            "]]").replace('\'', '"');
+
+    // serves PAGE at every url and keeps the urls it was asked for
+    private static class Node extends WavesnodesAPI {
+        final List<String> urls;
+        volatile boolean loaded = false;
+
+        Node(String baseUrl, String assetId, List<String> urls) {
+            super(baseUrl, assetId, false, 100000, 60);
+            this.urls = urls;
+        }
+
+        @Override
+        Page load(String url, String address, Consumer consumer) throws IOException {
+            urls.add(url);
+            Page page = decodePage(new JsonReader(new StringReader(PAGE)), address, consumer);
+            loaded = true;
+            return page;
+        }
+    }
+
+    private static List<String> hashes(List<Service.HistoryItem> items) {
+        List<String> hashes = new ArrayList<>();
+        for (Service.HistoryItem item : items) hashes.add(item.hash);
+        return hashes;
+    }
+
+    private static WavesnodesAPI.Page page(String json) throws IOException {
+        return WavesnodesAPI.decodePage(new JsonReader(new StringReader(json)), ME);
+    }
+
+    @Test
+    public void decodesWavesItems() throws IOException {
+        WavesnodesAPI api = new WavesnodesAPI("http://localhost/", false, 100000, 60);
+        WavesnodesAPI.Page page = page(PAGE);
+        assertEquals(3, page.transactions.size());
+
+        Service.HistoryItem sent = api.item(page.transactions.get(0), ME);
+        assertEquals("t1", sent.hash);
+        assertEquals(100, sent.block);
+        assertEquals(1700000000, sent.time);
+        assertEquals(BigInteger.valueOf(-600), sent.amount);
+        assertEquals(BigInteger.valueOf(100), sent.fee);
+
+        Service.HistoryItem fee = api.item(page.transactions.get(1), ME);
+        assertEquals(Long.MAX_VALUE, fee.block);
+        assertEquals(BigInteger.ZERO, fee.amount);
+
+        Service.HistoryItem mass = api.item(page.transactions.get(2), ME);
+        assertEquals(BigInteger.valueOf(30), mass.amount);
+        assertEquals(BigInteger.valueOf(200), mass.fee);
+    }
+
+    @Test
+    public void narrowsToTheAsset() throws IOException {
+        WavesnodesAPI api = new WavesnodesAPI("http://localhost/", TOKEN, false, 100000, 60);
+        WavesnodesAPI.Page page = page(PAGE);
+        assertNull(api.item(page.transactions.get(0), ME));
+        Service.HistoryItem received = api.item(page.transactions.get(1), ME);
+        assertEquals(BigInteger.valueOf(7), received.amount);
+        assertEquals(BigInteger.ZERO, received.fee);
+        assertNull(api.item(page.transactions.get(2), ME));
+        assertEquals(BigInteger.valueOf(-7), api.item(page.transactions.get(1), OTHER).amount);
+    }
+
+    @Test
+    public void rejectsMissingFields() throws IOException {
+        WavesnodesAPI api = new WavesnodesAPI("http://localhost/", false, 100000, 60);
+        WavesnodesAPI.Page page = page("[[{\"height\":1,\"sender\":\"3PMe\",\"recipient\":\"3POther\",\"amount\":1,\"fee\":1}]]");
+        try {
+            api.item(page.transactions.get(0), ME);
+            fail();
+        } catch (IOException e) {
+            assertEquals("Missing field id", e.getMessage());
+        }
+    }
+
+    @Test
+    public void assetsWithDifferentTipsShareOneFetch() {
+        List<String> urls = new ArrayList<>();
+        Node waves = new Node("http://tips/", null, urls);
+        Node token = new Node("http://tips/", TOKEN, urls);
+        assertEquals(Arrays.asList("t1", "t2"), hashes(waves.getHistory(ME, 100)));
+        assertEquals(Arrays.asList("t2"), hashes(token.getHistory(ME, 50)));
+        assertEquals(Arrays.asList("http://tips/transactions/address/3PMe/limit/10"), urls);
+    }
+
+    @Test
+    public void anUnknownTipSizesTheSharedPage() {
+        List<String> urls = new ArrayList<>();
+        Node waves = new Node("http://unknown/", null, urls);
+        Node token = new Node("http://unknown/", TOKEN, urls);
+        assertEquals(Arrays.asList("t2"), hashes(token.getHistory(ME, 0)));
+        assertEquals(Arrays.asList("t1", "t2"), hashes(waves.getHistory(ME, 100)));
+        assertEquals(Arrays.asList("http://unknown/transactions/address/3PMe/limit/100"), urls);
+    }
+
+    @Test
+    public void leaderStreamsAndStopsWhileFollowersGetTheWholePage() {
+        List<String> urls = new ArrayList<>();
+        Node waves = new Node("http://stream/", null, urls);
+        Node token = new Node("http://stream/", TOKEN, urls);
+        List<Boolean> loaded = new ArrayList<>();
+        assertEquals(true, waves.streamHistory(ME, 1, (Service.HistoryItem item) -> {
+            loaded.add(waves.loaded);
+            return false;
+        }));
+        assertEquals(Arrays.asList(false), loaded);
+        assertEquals(Arrays.asList("t2"), hashes(token.getHistory(ME, 1)));
+        assertEquals(1, urls.size());
+    }
+
+}